@@ -0,0 +1,503 @@
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * AESBenchmark.java
+ * Small throughput benchmark for the fast engine and the modes built on it.
+ *
+ * Run with:  java AESBenchmark [section] [megabytes]
+ * where section is "all" (default) or one of the names printed below.
+ * Each case is warmed up first so the JIT has compiled the hot loops, then
+ * timed over several runs; the best run is reported in MB/s.
+ */
+public class AESBenchmark {
+
+    private static final int WARMUP_RUNS = 3;
+    private static final int TIMED_RUNS = 5;
+
+    private static int sink; // keeps results alive so the JIT cannot drop the work
+
+    public static void main(String[] args) throws Exception {
+        String section = args.length > 0 ? args[0] : "all";
+        int megabytes = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+
+        byte[] key = new byte[16];
+        byte[] data = new byte[megabytes << 20];
+        Random random = new Random(1);
+        random.nextBytes(key);
+        random.nextBytes(data);
+
+        System.out.println("AES benchmark, " + megabytes + " MiB per run, best of " + TIMED_RUNS);
+        if (section.equals("all") || section.equals("tables")) {
+            benchTables(); // first, while the table classes are still uninitialized
+        }
+        if (section.equals("all") || section.equals("ghash")) {
+            benchGhash(key, data);
+        }
+        if (section.equals("all") || section.equals("buffers")) {
+            benchBuffers(key, data);
+        }
+        if (section.equals("all") || section.equals("hex")) {
+            benchHex(data);
+        }
+        if (section.equals("all") || section.equals("xts")) {
+            benchXts(key, data);
+        }
+        if (section.equals("all") || section.equals("cbc")) {
+            benchCbc(key, data);
+        }
+        if (section.equals("all") || section.equals("cmac")) {
+            benchCmac(key, data);
+        }
+        if (section.equals("all") || section.equals("drbg")) {
+            benchDrbg(data);
+        }
+        if (section.equals("all") || section.equals("mmo")) {
+            benchMmo(data);
+        }
+        if (section.equals("all") || section.equals("ff1")) {
+            benchFf1(key, data);
+        }
+        if (section.equals("all") || section.equals("jca")) {
+            benchProviders(key, data);
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    /* benchTables:
+     * Startup cost of the lookup tables. Class initialization runs once per
+     * JVM, so the first two lines are single cold measurements: AESTables as
+     * generated from GaloisField, and LiteralTables, the previous layout
+     * (hand-typed S-Box literals, T-tables computed from them). Run this
+     * section in a fresh JVM to get meaningful numbers. */
+    private static void benchTables() throws Exception {
+        System.out.println("\n[tables]");
+        long t0 = System.nanoTime();
+        sink += AESTables.TE0[1] ^ AESTables.TD0[1];
+        long generated = System.nanoTime() - t0;
+        t0 = System.nanoTime();
+        sink += LiteralTables.TE0[1] ^ LiteralTables.TD0[1];
+        long literal = System.nanoTime() - t0;
+        System.out.printf("  %-40s %9.1f us%n", "init, generated from GaloisField", generated / 1e3);
+        System.out.printf("  %-40s %9.1f us%n", "init, S-Box literals + xtime", literal / 1e3);
+        System.out.printf("  %-40s %9d bytes%n", "S-Boxes as byte[] (AESTables)", 2 * AESTables.SBOX.length);
+        System.out.printf("  %-40s %9d bytes%n", "S-Boxes as int[] literals", 2 * 4 * LiteralTables.S_BOX.length);
+    }
+
+    /* LiteralTables: baseline for benchTables, the table setup before GaloisField. */
+    private static final class LiteralTables {
+        static final int[] S_BOX = {
+                0x63, 0x7c, 0x77, 0x7b, 0xf2, 0x6b, 0x6f, 0xc5, 0x30, 0x01, 0x67, 0x2b, 0xfe, 0xd7, 0xab, 0x76,
+                0xca, 0x82, 0xc9, 0x7d, 0xfa, 0x59, 0x47, 0xf0, 0xad, 0xd4, 0xa2, 0xaf, 0x9c, 0xa4, 0x72, 0xc0,
+                0xb7, 0xfd, 0x93, 0x26, 0x36, 0x3f, 0xf7, 0xcc, 0x34, 0xa5, 0xe5, 0xf1, 0x71, 0xd8, 0x31, 0x15,
+                0x04, 0xc7, 0x23, 0xc3, 0x18, 0x96, 0x05, 0x9a, 0x07, 0x12, 0x80, 0xe2, 0xeb, 0x27, 0xb2, 0x75,
+                0x09, 0x83, 0x2c, 0x1a, 0x1b, 0x6e, 0x5a, 0xa0, 0x52, 0x3b, 0xd6, 0xb3, 0x29, 0xe3, 0x2f, 0x84,
+                0x53, 0xd1, 0x00, 0xed, 0x20, 0xfc, 0xb1, 0x5b, 0x6a, 0xcb, 0xbe, 0x39, 0x4a, 0x4c, 0x58, 0xcf,
+                0xd0, 0xef, 0xaa, 0xfb, 0x43, 0x4d, 0x33, 0x85, 0x45, 0xf9, 0x02, 0x7f, 0x50, 0x3c, 0x9f, 0xa8,
+                0x51, 0xa3, 0x40, 0x8f, 0x92, 0x9d, 0x38, 0xf5, 0xbc, 0xb6, 0xda, 0x21, 0x10, 0xff, 0xf3, 0xd2,
+                0xcd, 0x0c, 0x13, 0xec, 0x5f, 0x97, 0x44, 0x17, 0xc4, 0xa7, 0x7e, 0x3d, 0x64, 0x5d, 0x19, 0x73,
+                0x60, 0x81, 0x4f, 0xdc, 0x22, 0x2a, 0x90, 0x88, 0x46, 0xee, 0xb8, 0x14, 0xde, 0x5e, 0x0b, 0xdb,
+                0xe0, 0x32, 0x3a, 0x0a, 0x49, 0x06, 0x24, 0x5c, 0xc2, 0xd3, 0xac, 0x62, 0x91, 0x95, 0xe4, 0x79,
+                0xe7, 0xc8, 0x37, 0x6d, 0x8d, 0xd5, 0x4e, 0xa9, 0x6c, 0x56, 0xf4, 0xea, 0x65, 0x7a, 0xae, 0x08,
+                0xba, 0x78, 0x25, 0x2e, 0x1c, 0xa6, 0xb4, 0xc6, 0xe8, 0xdd, 0x74, 0x1f, 0x4b, 0xbd, 0x8b, 0x8a,
+                0x70, 0x3e, 0xb5, 0x66, 0x48, 0x03, 0xf6, 0x0e, 0x61, 0x35, 0x57, 0xb9, 0x86, 0xc1, 0x1d, 0x9e,
+                0xe1, 0xf8, 0x98, 0x11, 0x69, 0xd9, 0x8e, 0x94, 0x9b, 0x1e, 0x87, 0xe9, 0xce, 0x55, 0x28, 0xdf,
+                0x8c, 0xa1, 0x89, 0x0d, 0xbf, 0xe6, 0x42, 0x68, 0x41, 0x99, 0x2d, 0x0f, 0xb0, 0x54, 0xbb, 0x16
+        };
+
+        static final int[] INV_S_BOX = {
+                0x52, 0x09, 0x6a, 0xd5, 0x30, 0x36, 0xa5, 0x38, 0xbf, 0x40, 0xa3, 0x9e, 0x81, 0xf3, 0xd7, 0xfb,
+                0x7c, 0xe3, 0x39, 0x82, 0x9b, 0x2f, 0xff, 0x87, 0x34, 0x8e, 0x43, 0x44, 0xc4, 0xde, 0xe9, 0xcb,
+                0x54, 0x7b, 0x94, 0x32, 0xa6, 0xc2, 0x23, 0x3d, 0xee, 0x4c, 0x95, 0x0b, 0x42, 0xfa, 0xc3, 0x4e,
+                0x08, 0x2e, 0xa1, 0x66, 0x28, 0xd9, 0x24, 0xb2, 0x76, 0x5b, 0xa2, 0x49, 0x6d, 0x8b, 0xd1, 0x25,
+                0x72, 0xf8, 0xf6, 0x64, 0x86, 0x68, 0x98, 0x16, 0xd4, 0xa4, 0x5c, 0xcc, 0x5d, 0x65, 0xb6, 0x92,
+                0x6c, 0x70, 0x48, 0x50, 0xfd, 0xed, 0xb9, 0xda, 0x5e, 0x15, 0x46, 0x57, 0xa7, 0x8d, 0x9d, 0x84,
+                0x90, 0xd8, 0xab, 0x00, 0x8c, 0xbc, 0xd3, 0x0a, 0xf7, 0xe4, 0x58, 0x05, 0xb8, 0xb3, 0x45, 0x06,
+                0xd0, 0x2c, 0x1e, 0x8f, 0xca, 0x3f, 0x0f, 0x02, 0xc1, 0xaf, 0xbd, 0x03, 0x01, 0x13, 0x8a, 0x6b,
+                0x3a, 0x91, 0x11, 0x41, 0x4f, 0x67, 0xdc, 0xea, 0x97, 0xf2, 0xcf, 0xce, 0xf0, 0xb4, 0xe6, 0x73,
+                0x96, 0xac, 0x74, 0x22, 0xe7, 0xad, 0x35, 0x85, 0xe2, 0xf9, 0x37, 0xe8, 0x1c, 0x75, 0xdf, 0x6e,
+                0x47, 0xf1, 0x1a, 0x71, 0x1d, 0x29, 0xc5, 0x89, 0x6f, 0xb7, 0x62, 0x0e, 0xaa, 0x18, 0xbe, 0x1b,
+                0xfc, 0x56, 0x3e, 0x4b, 0xc6, 0xd2, 0x79, 0x20, 0x9a, 0xdb, 0xc0, 0xfe, 0x78, 0xcd, 0x5a, 0xf4,
+                0x1f, 0xdd, 0xa8, 0x33, 0x88, 0x07, 0xc7, 0x31, 0xb1, 0x12, 0x10, 0x59, 0x27, 0x80, 0xec, 0x5f,
+                0x60, 0x51, 0x7f, 0xa9, 0x19, 0xb5, 0x4a, 0x0d, 0x2d, 0xe5, 0x7a, 0x9f, 0x93, 0xc9, 0x9c, 0xef,
+                0xa0, 0xe0, 0x3b, 0x4d, 0xae, 0x2a, 0xf5, 0xb0, 0xc8, 0xeb, 0xbb, 0x3c, 0x83, 0x53, 0x99, 0x61,
+                0x17, 0x2b, 0x04, 0x7e, 0xba, 0x77, 0xd6, 0x26, 0xe1, 0x69, 0x14, 0x63, 0x55, 0x21, 0x0c, 0x7d
+        };
+
+        static final int[] TE0 = new int[256], TE1 = new int[256], TE2 = new int[256], TE3 = new int[256];
+        static final int[] TD0 = new int[256], TD1 = new int[256], TD2 = new int[256], TD3 = new int[256];
+
+        static {
+            for (int x = 0; x < 256; x++) {
+                int s = S_BOX[x];
+                int s2 = xtime(s);
+                int t = (s2 << 24) | (s << 16) | (s << 8) | (s2 ^ s);
+                TE0[x] = t;
+                TE1[x] = Integer.rotateRight(t, 8);
+                TE2[x] = Integer.rotateRight(t, 16);
+                TE3[x] = Integer.rotateRight(t, 24);
+                int si = INV_S_BOX[x];
+                int si2 = xtime(si), si4 = xtime(si2), si8 = xtime(si4);
+                int d = ((si8 ^ si4 ^ si2) << 24) | ((si8 ^ si) << 16) | ((si8 ^ si4 ^ si) << 8) | (si8 ^ si2 ^ si);
+                TD0[x] = d;
+                TD1[x] = Integer.rotateRight(d, 8);
+                TD2[x] = Integer.rotateRight(d, 16);
+                TD3[x] = Integer.rotateRight(d, 24);
+            }
+        }
+
+        private static int xtime(int b) {
+            b <<= 1;
+            return (b & 0x100) != 0 ? b ^ 0x11B : b;
+        }
+    }
+
+    /* benchGhash:
+     * GHASH alone with the 4-bit and 8-bit tables, then full GCM encryption
+     * with each, so the share of GHASH in the GCM cost is visible. */
+    private static void benchGhash(byte[] key, byte[] data) throws Exception {
+        System.out.println("\n[ghash]");
+        AESCipher cipher = new AESCipher(key);
+        byte[] h = new byte[AES_Constants.BLOCK_SIZE];
+        cipher.encryptBlock(h, 0, h, 0);
+        byte[] iv = new byte[12];
+        byte[] out = new byte[data.length + AES_GCM.TAG_LENGTH];
+
+        for (int bits : new int[] {4, 8}) {
+            GHash ghash = new GHash(h, bits);
+            byte[] y = new byte[AES_Constants.BLOCK_SIZE];
+            report("GHASH " + bits + "-bit table", data.length, () -> {
+                ghash.reset();
+                ghash.update(data, 0, data.length);
+                ghash.lengths(0, data.length);
+                ghash.digest(y, 0);
+                sink += y[0];
+            });
+        }
+        for (int bits : new int[] {4, 8}) {
+            AES_GCM gcm = new AES_GCM(cipher, bits);
+            report("AES-GCM encrypt, " + bits + "-bit GHASH", data.length, () -> {
+                gcm.init(true, iv);
+                gcm.update(data, 0, data.length, out, 0);
+                gcm.doFinal(out, data.length);
+                sink += out[0];
+            });
+        }
+    }
+
+    /* benchBuffers:
+     * ECB on a byte[], on a direct ByteBuffer in place, and on a direct
+     * ByteBuffer the old way (copy out to a byte[], encrypt, copy back). */
+    private static void benchBuffers(byte[] key, byte[] data) throws Exception {
+        System.out.println("\n[buffers]");
+        AESCipher cipher = new AESCipher(key);
+        int nBlocks = data.length / AES_Constants.BLOCK_SIZE;
+        byte[] heapOut = new byte[data.length];
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+        ByteBuffer directOut = ByteBuffer.allocateDirect(data.length);
+
+        report("ECB byte[]", data.length, () -> {
+            cipher.encryptBlocks(data, 0, nBlocks, heapOut, 0);
+            sink += heapOut[0];
+        });
+        report("ECB direct ByteBuffer", data.length, () -> {
+            cipher.encrypt(direct.duplicate(), directOut.clear());
+            sink += directOut.get(0);
+        });
+        report("ECB direct, copy via byte[]", data.length, () -> {
+            byte[] tmp = new byte[data.length];
+            direct.duplicate().get(tmp);
+            cipher.encryptBlocks(tmp, 0, nBlocks, tmp, 0);
+            directOut.clear().put(tmp);
+            sink += directOut.get(0);
+        });
+    }
+
+    /* benchXts:
+     * XTS over 4 KiB sectors, one sector at a time and through the
+     * fork-join sector API, next to plain ECB as the upper bound. */
+    private static void benchXts(byte[] key, byte[] data) throws Exception {
+        System.out.println("\n[xts]");
+        byte[] key32 = new byte[32];
+        new Random(2).nextBytes(key32);
+        AES_XTS xts = new AES_XTS(key32);
+        AESCipher cipher = new AESCipher(key);
+        int sector = 4096;
+        byte[] out = new byte[data.length];
+
+        report("ECB byte[]", data.length, () -> {
+            cipher.encryptBlocks(data, 0, data.length / AES_Constants.BLOCK_SIZE, out, 0);
+            sink += out[0];
+        });
+        report("XTS 4 KiB sectors, one by one", data.length, () -> {
+            for (int off = 0; off < data.length; off += sector) {
+                xts.encryptSector(off / sector, data, off, sector, out, off);
+            }
+            sink += out[0];
+        });
+        report("XTS 4 KiB sectors, encryptSectors", data.length, () -> {
+            xts.encryptSectors(0, sector, data, 0, data.length, out, 0);
+            sink += out[0];
+        });
+    }
+
+    /* benchCbc:
+     * CBC encryption of 1024 independent streams, each with its own key,
+     * fed in 1 KiB pieces: stream after stream with AES_CBC.encrypt, and
+     * all together through AES_CBCMultiBuffer. ECB is the upper bound. */
+    private static void benchCbc(byte[] key, byte[] data) throws Exception {
+        System.out.println("\n[cbc]");
+        AESCipher cipher = new AESCipher(key);
+        int streams = 1024;
+        int piece = 1024;
+        int perStream = data.length / streams;
+        AES_CBC[] cbc = new AES_CBC[streams];
+        for (int i = 0; i < streams; i++) {
+            cbc[i] = new AES_CBC(new AESCipher(Arrays.copyOfRange(data, 16 * i, 16 * i + 16)), new byte[16]);
+        }
+        AES_CBCMultiBuffer multi = new AES_CBCMultiBuffer();
+        byte[] out = new byte[data.length];
+
+        report("ECB byte[]", data.length, () -> {
+            cipher.encryptBlocks(data, 0, data.length / AES_Constants.BLOCK_SIZE, out, 0);
+            sink += out[0];
+        });
+        report("CBC 1024 streams, one by one", data.length, () -> {
+            for (int off = 0; off < perStream; off += piece) {
+                for (int i = 0; i < streams; i++) {
+                    cbc[i].encrypt(data, i * perStream + off, piece, out, i * perStream + off);
+                }
+            }
+            sink += out[0];
+        });
+        report("CBC 1024 streams, AES_CBCMultiBuffer", data.length, () -> {
+            for (int off = 0; off < perStream; off += piece) {
+                for (int i = 0; i < streams; i++) {
+                    multi.submit(cbc[i], data, i * perStream + off, piece, out, i * perStream + off);
+                }
+            }
+            multi.run();
+            sink += out[0];
+        });
+    }
+
+    /* benchCmac:
+     * CMAC over 64-byte records, one message at a time and through the
+     * interleaved batch, plus one long message for the serial chain rate. */
+    private static void benchCmac(byte[] key, byte[] data) throws Exception {
+        System.out.println("\n[cmac]");
+        AES_CMAC cmac = new AES_CMAC(new AESCipher(key));
+        int record = 64;
+        int count = data.length / record;
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = i * record;
+            lengths[i] = record;
+        }
+        byte[] tags = new byte[count * AES_CMAC.TAG_LENGTH];
+
+        report("CMAC 64-byte records, one by one", data.length, () -> {
+            for (int i = 0; i < count; i++) {
+                cmac.mac(data, offsets[i], record, tags, i * AES_CMAC.TAG_LENGTH);
+            }
+            sink += tags[0];
+        });
+        report("CMAC 64-byte records, macAll", data.length, () -> {
+            cmac.macAll(data, offsets, lengths, count, tags, 0);
+            sink += tags[0];
+        });
+        report("CMAC one message", data.length, () -> {
+            cmac.mac(data, 0, data.length, tags, 0);
+            sink += tags[0];
+        });
+    }
+
+    /* benchDrbg:
+     * 16-byte IVs and bulk output from the default SecureRandom and from the
+     * per-thread CTR_DRBG, directly and through the JCA SecureRandom service. */
+    private static void benchDrbg(byte[] data) throws Exception {
+        System.out.println("\n[drbg]");
+        SecureRandom platform = new SecureRandom();
+        SecureRandom jca = SecureRandom.getInstance("AES-CTR-DRBG", new AESProvider());
+        AES_CTRDRBG drbg = AES_CTRDRBG.current();
+        int ivs = data.length / 16 / 8; // fewer calls: the platform source is slow
+        byte[] iv = new byte[16];
+
+        report("16-byte IVs, SecureRandom (" + platform.getAlgorithm() + ")", ivs * 16L, () -> {
+            for (int i = 0; i < ivs; i++) {
+                platform.nextBytes(iv);
+            }
+            sink += iv[0];
+        });
+        report("16-byte IVs, SecureRandom AES-CTR-DRBG", ivs * 16L, () -> {
+            for (int i = 0; i < ivs; i++) {
+                jca.nextBytes(iv);
+            }
+            sink += iv[0];
+        });
+        report("16-byte IVs, AES_CTRDRBG.current()", ivs * 16L, () -> {
+            for (int i = 0; i < ivs; i++) {
+                drbg.nextBytes(iv);
+            }
+            sink += iv[0];
+        });
+        byte[] bulk = new byte[data.length / 8];
+        report("bulk, SecureRandom (" + platform.getAlgorithm() + ")", bulk.length, () -> {
+            platform.nextBytes(bulk);
+            sink += bulk[0];
+        });
+        report("bulk, AES_CTRDRBG.current()", bulk.length, () -> {
+            drbg.nextBytes(bulk);
+            sink += bulk[0];
+        });
+    }
+
+    /* benchMmo:
+     * AES-MMO over the whole buffer: the plain chain, the tree mode on the
+     * common pool, and SHA-256 from the platform for scale. */
+    private static void benchMmo(byte[] data) throws Exception {
+        System.out.println("\n[mmo]");
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        report("AES-MMO, plain", data.length, () -> sink += AES_MMO.hash(data)[0]);
+        report("AES-MMO, tree (" + pool.getParallelism() + " workers)", data.length,
+               () -> sink += AES_MMO.treeHash(pool, data, 0, data.length)[0]);
+        report("SHA-256", data.length, () -> sink += sha.digest(data)[0]);
+    }
+
+    /* benchFf1:
+     * FF1 tokenization of 16-digit card numbers (1/64 of the buffer's
+     * length in numbers), one String at a time and in place with
+     * encryptAll. MB/s counts digits. */
+    private static void benchFf1(byte[] key, byte[] data) throws Exception {
+        System.out.println("\n[ff1]");
+        AES_FF1 ff1 = new AES_FF1(new AESCipher(key), 10);
+        AES_FF1.Tweak tweak = ff1.tweak("merchant-0001".getBytes());
+        int digits = 16;
+        int count = data.length / 64;
+        char[] pans = new char[count * digits];
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < digits; j++) {
+                pans[i * digits + j] = (char) ('0' + (data[i * digits + j] & 0xFF) % 10);
+            }
+            offsets[i] = i * digits;
+            lengths[i] = digits;
+            strings[i] = new String(pans, i * digits, digits);
+        }
+
+        report("FF1 16-digit, encrypt(String)", pans.length, () -> {
+            for (int i = 0; i < count; i++) {
+                sink += ff1.encrypt(strings[i], tweak).charAt(0);
+            }
+        });
+        report("FF1 16-digit, encryptAll", pans.length, () -> {
+            ff1.encryptAll(pans, offsets, lengths, count, tweak);
+            sink += pans[0];
+        });
+    }
+
+    /* benchProviders:
+     * The same javax.crypto.Cipher calls against SunJCE and AESProvider,
+     * one line each, so the two can be compared transformation by
+     * transformation. DES rows only appear when DESCipherSpi is on the
+     * classpath. */
+    private static void benchProviders(byte[] key, byte[] data) throws Exception {
+        System.out.println("\n[jca]  SunJCE vs " + AESProvider.NAME);
+        AESProvider ours = new AESProvider();
+        Provider sun = Security.getProvider("SunJCE");
+        List<String> transformations = new ArrayList<>(Arrays.asList(
+                "AES/ECB/NoPadding", "AES/CBC/PKCS5Padding", "AES/CTR/NoPadding", "AES/GCM/NoPadding"));
+        if (ours.hasDes()) {
+            transformations.add("DES/ECB/NoPadding");
+            transformations.add("DES/CBC/PKCS5Padding");
+        }
+        byte[] out = new byte[data.length + 2 * AES_Constants.BLOCK_SIZE];
+
+        for (String t : transformations) {
+            String algorithm = t.substring(0, t.indexOf('/'));
+            SecretKeySpec k = new SecretKeySpec(algorithm.equals("DES") ? Arrays.copyOf(key, 8) : key, algorithm);
+            // DES is far slower: time a slice so each row takes similar wall time
+            int len = algorithm.equals("DES") ? data.length / 16 : data.length;
+            for (Provider p : new Provider[] {sun, ours}) {
+                Cipher cipher = Cipher.getInstance(t, p);
+                report(t + " " + p.getName(), len, () -> {
+                    cipher.init(Cipher.ENCRYPT_MODE, k); // fresh random IV each run (GCM requires it)
+                    sink += cipher.doFinal(data, 0, len, out, 0);
+                });
+            }
+        }
+    }
+
+    /* benchHex:
+     * HexCodec against the String.format / substring+parseInt conversion
+     * AES_Utils used before, on 1 MiB, next to ECB on the same bytes. */
+    private static void benchHex(byte[] data) throws Exception {
+        System.out.println("\n[hex]");
+        byte[] slice = Arrays.copyOf(data, 1 << 20);
+        char[] chars = new char[2 * slice.length];
+        byte[] back = new byte[slice.length];
+        String hex = HexCodec.encode(slice);
+
+        report("String.format(\"%02x\") encode", slice.length, () -> {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : slice) {
+                sb.append(String.format("%02x", b & 0xFF));
+            }
+            sink += sb.length();
+        });
+        report("substring/parseInt decode", slice.length, () -> {
+            for (int i = 0; i < back.length; i++) {
+                back[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+            }
+            sink += back[0];
+        });
+        report("HexCodec encode into char[]", slice.length, () -> {
+            HexCodec.encode(slice, 0, slice.length, chars, 0);
+            sink += chars[0];
+        });
+        report("HexCodec decode into byte[]", slice.length, () -> {
+            HexCodec.decode(hex, 0, hex.length(), back, 0);
+            sink += back[0];
+        });
+        AESCipher cipher = new AESCipher(Arrays.copyOf(data, 16));
+        report("ECB on the same bytes", slice.length, () -> {
+            cipher.encryptBlocks(slice, 0, slice.length / AES_Constants.BLOCK_SIZE, back, 0);
+            sink += back[0];
+        });
+    }
+
+    interface Task {
+        void run() throws Exception;
+    }
+
+    /** Warms up, times TIMED_RUNS runs of task over 'bytes' bytes and prints the best. */
+    static void report(String name, long bytes, Task task) throws Exception {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            task.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double mbPerSec = bytes / (best / 1e9) / (1 << 20);
+        System.out.printf("  %-40s %9.1f MB/s%n", name, mbPerSec);
+    }
+}
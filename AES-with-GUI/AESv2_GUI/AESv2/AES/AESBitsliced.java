@@ -0,0 +1,403 @@
+import java.util.Arrays;
+
+/**
+ * AESBitsliced.java
+ * Constant-time bitsliced AES-128 encryption, 64 blocks per pass.
+ *
+ * The state of 64 blocks is transposed into 128 long bit-planes:
+ * plane[8 * i + b] holds bit b of state byte i (column-major, as in
+ * AES_Utils.bytesToState), and bit k of every plane belongs to block k.
+ * SubBytes is the Boyar-Peralta Boolean circuit (113 gates) evaluated on the
+ * planes, ShiftRows is a plane permutation, MixColumns is XORs of planes and
+ * AddRoundKey XORs all-zero/all-one key planes. There are no table lookups
+ * and no branches on secret data, including in the key schedule, so unlike
+ * AESFastEngine nothing leaks through the data cache.
+ *
+ * Only encryption is provided: it covers ECB encryption batches and CTR,
+ * where decryption is also encryption of the counter blocks.
+ */
+public class AESBitsliced {
+
+    /** Blocks processed per pass (one per bit of a long). */
+    public static final int LANES = 64;
+
+    private static final int PLANES = 8 * AES_Constants.BLOCK_SIZE;
+
+    // key planes for rounds 0..10, PLANES longs per round
+    private final long[] rk = new long[(AES_Constants.ROUNDS + 1) * PLANES];
+
+    public AESBitsliced(byte[] key) {
+        if (key == null || key.length != AES_Constants.BLOCK_SIZE) {
+            throw new IllegalArgumentException("Key must be " + AES_Constants.BLOCK_SIZE + " bytes (128 bits).");
+        }
+        int[] w = expandKey(key);
+        for (int round = 0; round <= AES_Constants.ROUNDS; round++) {
+            for (int i = 0; i < AES_Constants.BLOCK_SIZE; i++) {
+                int v = w[round * 4 + i / 4] >>> (24 - 8 * (i % 4));
+                for (int b = 0; b < 8; b++) {
+                    rk[round * PLANES + 8 * i + b] = -(long) ((v >>> b) & 1);
+                }
+            }
+        }
+        Arrays.fill(w, 0);
+    }
+
+    /*
+     * encryptBlocks:
+     * ECB-encrypts nBlocks consecutive blocks, LANES per pass. A short last pass
+     * still runs all 64 lanes, so the time only depends on nBlocks. In-place safe.
+     */
+    public void encryptBlocks(byte[] in, int off, int nBlocks, byte[] out, int outOff) {
+        long[] q = new long[PLANES];
+        long[] t = new long[PLANES];
+        for (int i = 0; i < nBlocks; i += LANES) {
+            int n = Math.min(LANES, nBlocks - i);
+            pack(in, off + i * AES_Constants.BLOCK_SIZE, n, q);
+            encryptPlanes(q, t);
+            unpack(q, n, out, outOff + i * AES_Constants.BLOCK_SIZE);
+        }
+    }
+
+    /*
+     * crypt:
+     * CTR mode with the same counter layout as AES_CTR (iv + block index,
+     * 128-bit big-endian), starting at byte offset 'offset' of the stream.
+     * Gives the same output as AES_CTR.crypt for the same key and IV.
+     */
+    public void crypt(byte[] iv, long offset, byte[] in, int inOff, int len, byte[] out, int outOff) {
+        if (iv == null || iv.length != AES_Constants.BLOCK_SIZE) {
+            throw new IllegalArgumentException("CTR IV must be " + AES_Constants.BLOCK_SIZE + " bytes.");
+        }
+        byte[] counters = new byte[LANES * AES_Constants.BLOCK_SIZE];
+        long[] q = new long[PLANES];
+        long[] t = new long[PLANES];
+        AES_CTR.Keystream ks = new AES_CTR.Keystream(LANES) {
+            @Override
+            void blocks(long first, int nBlocks) {
+                for (int b = 0; b < nBlocks; b++) {
+                    AES_CTR.counterBlock(iv, first + b, counters, b * AES_Constants.BLOCK_SIZE);
+                }
+                pack(counters, 0, nBlocks, q);
+                encryptPlanes(q, t);
+                unpack(q, nBlocks, ks, 0);
+            }
+        };
+        ks.start(offset);
+        byte[] k = ks.ks;
+        for (int pos = 0; pos < len; ) {
+            int n = ks.next(len - pos), from = ks.from;
+            int i = inOff + pos, o = outOff + pos;
+            for (int j = 0; j < n; j++) {
+                out[o + j] = (byte) (in[i + j] ^ k[from + j]);
+            }
+            pos += n;
+        }
+    }
+
+    /** Zeroizes the key planes; the object must not be used afterwards. */
+    public void destroy() {
+        Arrays.fill(rk, 0L);
+    }
+
+    /** The AES rounds on 64 bit-sliced blocks; t is scratch. */
+    private void encryptPlanes(long[] q, long[] t) {
+        addRoundKey(q, 0);
+        for (int round = 1; round < AES_Constants.ROUNDS; round++) {
+            subBytes(q);
+            shiftRows(q, t);
+            mixColumns(q, t);
+            addRoundKey(q, round);
+        }
+        subBytes(q);
+        shiftRows(q, t);
+        addRoundKey(q, AES_Constants.ROUNDS);
+    }
+
+    private void addRoundKey(long[] q, int round) {
+        int k = round * PLANES;
+        for (int i = 0; i < PLANES; i++) {
+            q[i] ^= rk[k + i];
+        }
+    }
+
+    private static void subBytes(long[] q) {
+        for (int i = 0; i < AES_Constants.BLOCK_SIZE; i++) {
+            sbox(q, 8 * i);
+        }
+    }
+
+    /* ShiftRows: byte (row r, column c) takes byte (row r, column (c + r) % 4). */
+    private static void shiftRows(long[] q, long[] t) {
+        System.arraycopy(q, 0, t, 0, PLANES);
+        for (int c = 0; c < 4; c++) {
+            for (int r = 1; r < 4; r++) {
+                System.arraycopy(t, 8 * (4 * ((c + r) & 3) + r), q, 8 * (4 * c + r), 8);
+            }
+        }
+    }
+
+    /*
+     * MixColumns:
+     * out_r = 2*(a_r ^ a_r+1) ^ a_r+1 ^ a_r+2 ^ a_r+3. Doubling a bit-sliced byte
+     * shifts the planes up by one and folds the top plane into bits 0, 1, 3, 4
+     * (the 0x1B reduction).
+     */
+    private static void mixColumns(long[] q, long[] t) {
+        System.arraycopy(q, 0, t, 0, PLANES);
+        for (int c = 0; c < 4; c++) {
+            for (int r = 0; r < 4; r++) {
+                int o0 = 8 * (4 * c + r);
+                int o1 = 8 * (4 * c + ((r + 1) & 3));
+                int o2 = 8 * (4 * c + ((r + 2) & 3));
+                int o3 = 8 * (4 * c + ((r + 3) & 3));
+                long d0 = t[o0] ^ t[o1], d1 = t[o0 + 1] ^ t[o1 + 1], d2 = t[o0 + 2] ^ t[o1 + 2], d3 = t[o0 + 3] ^ t[o1 + 3];
+                long d4 = t[o0 + 4] ^ t[o1 + 4], d5 = t[o0 + 5] ^ t[o1 + 5], d6 = t[o0 + 6] ^ t[o1 + 6], d7 = t[o0 + 7] ^ t[o1 + 7];
+                q[o0] = d7 ^ t[o1] ^ t[o2] ^ t[o3];
+                q[o0 + 1] = d0 ^ d7 ^ t[o1 + 1] ^ t[o2 + 1] ^ t[o3 + 1];
+                q[o0 + 2] = d1 ^ t[o1 + 2] ^ t[o2 + 2] ^ t[o3 + 2];
+                q[o0 + 3] = d2 ^ d7 ^ t[o1 + 3] ^ t[o2 + 3] ^ t[o3 + 3];
+                q[o0 + 4] = d3 ^ d7 ^ t[o1 + 4] ^ t[o2 + 4] ^ t[o3 + 4];
+                q[o0 + 5] = d4 ^ t[o1 + 5] ^ t[o2 + 5] ^ t[o3 + 5];
+                q[o0 + 6] = d5 ^ t[o1 + 6] ^ t[o2 + 6] ^ t[o3 + 6];
+                q[o0 + 7] = d6 ^ t[o1 + 7] ^ t[o2 + 7] ^ t[o3 + 7];
+            }
+        }
+    }
+
+    /*
+     * sbox:
+     * Boyar-Peralta circuit for the AES S-Box ("A new combinational logic
+     * minimization technique with applications to cryptology", 2009) on the
+     * eight planes q[o..o+7], q[o] being the least significant bit.
+     */
+    static void sbox(long[] q, int o) {
+        long x0 = q[o + 7], x1 = q[o + 6], x2 = q[o + 5], x3 = q[o + 4];
+        long x4 = q[o + 3], x5 = q[o + 2], x6 = q[o + 1], x7 = q[o];
+
+        // Top linear transformation
+        long y14 = x3 ^ x5;
+        long y13 = x0 ^ x6;
+        long y9 = x0 ^ x3;
+        long y8 = x0 ^ x5;
+        long t0 = x1 ^ x2;
+        long y1 = t0 ^ x7;
+        long y4 = y1 ^ x3;
+        long y12 = y13 ^ y14;
+        long y2 = y1 ^ x0;
+        long y5 = y1 ^ x6;
+        long y3 = y5 ^ y8;
+        long t1 = x4 ^ y12;
+        long y15 = t1 ^ x5;
+        long y20 = t1 ^ x1;
+        long y6 = y15 ^ x7;
+        long y10 = y15 ^ t0;
+        long y11 = y20 ^ y9;
+        long y7 = x7 ^ y11;
+        long y17 = y10 ^ y11;
+        long y19 = y10 ^ y8;
+        long y16 = t0 ^ y11;
+        long y21 = y13 ^ y16;
+        long y18 = x0 ^ y16;
+
+        // Non-linear section
+        long t2 = y12 & y15;
+        long t3 = y3 & y6;
+        long t4 = t3 ^ t2;
+        long t5 = y4 & x7;
+        long t6 = t5 ^ t2;
+        long t7 = y13 & y16;
+        long t8 = y5 & y1;
+        long t9 = t8 ^ t7;
+        long t10 = y2 & y7;
+        long t11 = t10 ^ t7;
+        long t12 = y9 & y11;
+        long t13 = y14 & y17;
+        long t14 = t13 ^ t12;
+        long t15 = y8 & y10;
+        long t16 = t15 ^ t12;
+        long t17 = t4 ^ t14;
+        long t18 = t6 ^ t16;
+        long t19 = t9 ^ t14;
+        long t20 = t11 ^ t16;
+        long t21 = t17 ^ y20;
+        long t22 = t18 ^ y19;
+        long t23 = t19 ^ y21;
+        long t24 = t20 ^ y18;
+
+        long t25 = t21 ^ t22;
+        long t26 = t21 & t23;
+        long t27 = t24 ^ t26;
+        long t28 = t25 & t27;
+        long t29 = t28 ^ t22;
+        long t30 = t23 ^ t24;
+        long t31 = t22 ^ t26;
+        long t32 = t31 & t30;
+        long t33 = t32 ^ t24;
+        long t34 = t23 ^ t33;
+        long t35 = t27 ^ t33;
+        long t36 = t24 & t35;
+        long t37 = t36 ^ t34;
+        long t38 = t27 ^ t36;
+        long t39 = t29 & t38;
+        long t40 = t25 ^ t39;
+
+        long t41 = t40 ^ t37;
+        long t42 = t29 ^ t33;
+        long t43 = t29 ^ t40;
+        long t44 = t33 ^ t37;
+        long t45 = t42 ^ t41;
+        long z0 = t44 & y15;
+        long z1 = t37 & y6;
+        long z2 = t33 & x7;
+        long z3 = t43 & y16;
+        long z4 = t40 & y1;
+        long z5 = t29 & y7;
+        long z6 = t42 & y11;
+        long z7 = t45 & y17;
+        long z8 = t41 & y10;
+        long z9 = t44 & y12;
+        long z10 = t37 & y3;
+        long z11 = t33 & y4;
+        long z12 = t43 & y13;
+        long z13 = t40 & y5;
+        long z14 = t29 & y2;
+        long z15 = t42 & y9;
+        long z16 = t45 & y14;
+        long z17 = t41 & y8;
+
+        // Bottom linear transformation
+        long t46 = z15 ^ z16;
+        long t47 = z10 ^ z11;
+        long t48 = z5 ^ z13;
+        long t49 = z9 ^ z10;
+        long t50 = z2 ^ z12;
+        long t51 = z2 ^ z5;
+        long t52 = z7 ^ z8;
+        long t53 = z0 ^ z3;
+        long t54 = z6 ^ z7;
+        long t55 = z16 ^ z17;
+        long t56 = z12 ^ t48;
+        long t57 = t50 ^ t53;
+        long t58 = z4 ^ t46;
+        long t59 = z3 ^ t54;
+        long t60 = t46 ^ t57;
+        long t61 = z14 ^ t57;
+        long t62 = t52 ^ t58;
+        long t63 = t49 ^ t58;
+        long t64 = z4 ^ t59;
+        long t65 = t61 ^ t62;
+        long t66 = z1 ^ t63;
+        long s0 = t59 ^ t63;
+        long s6 = t56 ^ ~t62;
+        long s7 = t48 ^ ~t60;
+        long t67 = t64 ^ t65;
+        long s3 = t53 ^ t66;
+        long s4 = t51 ^ t66;
+        long s5 = t47 ^ t65;
+        long s1 = t64 ^ ~s3;
+        long s2 = t55 ^ ~t67;
+
+        q[o + 7] = s0;
+        q[o + 6] = s1;
+        q[o + 5] = s2;
+        q[o + 4] = s3;
+        q[o + 3] = s4;
+        q[o + 2] = s5;
+        q[o + 1] = s6;
+        q[o] = s7;
+    }
+
+    /*
+     * pack:
+     * Transposes n blocks into the bit-planes. Byte i of eight blocks forms one
+     * long, whose 8x8 bit transpose yields bit b of those eight blocks in byte b.
+     * Missing lanes (n < 64) are zero.
+     */
+    private static void pack(byte[] in, int off, int n, long[] q) {
+        Arrays.fill(q, 0L);
+        for (int g = 0; g < LANES / 8; g++) {
+            for (int i = 0; i < AES_Constants.BLOCK_SIZE; i++) {
+                long x = 0;
+                for (int j = 0; j < 8; j++) {
+                    int k = 8 * g + j;
+                    if (k < n) {
+                        x |= (in[off + k * AES_Constants.BLOCK_SIZE + i] & 0xFFL) << (8 * j);
+                    }
+                }
+                x = transpose8(x);
+                for (int b = 0; b < 8; b++) {
+                    q[8 * i + b] |= ((x >>> (8 * b)) & 0xFFL) << (8 * g);
+                }
+            }
+        }
+    }
+
+    /** Inverse of pack for the first n lanes. */
+    private static void unpack(long[] q, int n, byte[] out, int off) {
+        for (int g = 0; g < LANES / 8; g++) {
+            for (int i = 0; i < AES_Constants.BLOCK_SIZE; i++) {
+                long x = 0;
+                for (int b = 0; b < 8; b++) {
+                    x |= ((q[8 * i + b] >>> (8 * g)) & 0xFFL) << (8 * b);
+                }
+                x = transpose8(x);
+                for (int j = 0; j < 8; j++) {
+                    int k = 8 * g + j;
+                    if (k < n) {
+                        out[off + k * AES_Constants.BLOCK_SIZE + i] = (byte) (x >>> (8 * j));
+                    }
+                }
+            }
+        }
+    }
+
+    /** Transposes an 8x8 bit matrix (byte j = row j, bit b = column b). */
+    private static long transpose8(long x) {
+        long t = (x ^ (x >>> 7)) & 0x00AA00AA00AA00AAL;
+        x = x ^ t ^ (t << 7);
+        t = (x ^ (x >>> 14)) & 0x0000CCCC0000CCCCL;
+        x = x ^ t ^ (t << 14);
+        t = (x ^ (x >>> 28)) & 0x00000000F0F0F0F0L;
+        return x ^ t ^ (t << 28);
+    }
+
+    /*
+     * expandKey:
+     * Same schedule as KeyExpansion.expandKey, but SubWord runs through the
+     * bitsliced S-Box (one byte per lane) instead of indexing S_BOX with key bytes.
+     */
+    private static int[] expandKey(byte[] key) {
+        int[] w = new int[AES_Constants.TOTAL_WORDS];
+        long[] q = new long[8];
+        for (int i = 0; i < AES_Constants.KEY_WORDS; i++) {
+            w[i] = AES_Utils.loadWord(key, i * 4);
+        }
+        for (int i = AES_Constants.KEY_WORDS; i < AES_Constants.TOTAL_WORDS; i++) {
+            int temp = w[i - 1];
+            if (i % AES_Constants.KEY_WORDS == 0) {
+                temp = subWord(Integer.rotateLeft(temp, 8), q) ^ (AES_Constants.RCON[i / AES_Constants.KEY_WORDS - 1] << 24);
+            }
+            w[i] = w[i - AES_Constants.KEY_WORDS] ^ temp;
+        }
+        Arrays.fill(q, 0L);
+        return w;
+    }
+
+    private static int subWord(int word, long[] q) {
+        Arrays.fill(q, 0L);
+        for (int j = 0; j < 4; j++) {
+            int v = word >>> (24 - 8 * j);
+            for (int b = 0; b < 8; b++) {
+                q[b] |= (long) ((v >>> b) & 1) << j;
+            }
+        }
+        sbox(q, 0);
+        int result = 0;
+        for (int j = 0; j < 4; j++) {
+            for (int b = 0; b < 8; b++) {
+                result |= (int) ((q[b] >>> j) & 1) << (24 - 8 * j + b);
+            }
+        }
+        return result;
+    }
+}
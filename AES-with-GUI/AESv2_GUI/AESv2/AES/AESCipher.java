@@ -0,0 +1,160 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * AESCipher.java
+ * Reusable per-key AES-128 context for the fast engine.
+ *
+ * The encryption schedule and the Equivalent Inverse Cipher schedule are
+ * expanded once in the constructor; after that encryptBlock/decryptBlock
+ * allocate nothing and print nothing. The object holds no per-call state,
+ * so one instance can be shared between threads.
+ *
+ * destroy() zeroizes the schedules and marks the context destroyed; every
+ * later call, including the schedule accessors the modes use, throws
+ * IllegalStateException instead of encrypting under a zero key.
+ */
+public class AESCipher {
+
+    private final int[] w;  // KeyExpansion.expandKey schedule
+    private final int[] dk; // KeyExpansion.expandDecryptionKey schedule
+    private volatile boolean destroyed;
+
+    /** Expands a 16-byte key into both schedules. */
+    public AESCipher(byte[] key) {
+        if (key == null || key.length != AES_Constants.BLOCK_SIZE) {
+            throw new IllegalArgumentException("Key must be " + AES_Constants.BLOCK_SIZE + " bytes (128 bits).");
+        }
+        this.w = KeyExpansion.expandKey(key, false);
+        this.dk = KeyExpansion.expandDecryptionKey(w);
+    }
+
+    /** Wraps an already expanded schedule (44 words from KeyExpansion.expandKey). */
+    public AESCipher(int[] w) {
+        if (w == null || w.length != AES_Constants.TOTAL_WORDS) {
+            throw new IllegalArgumentException("Expanded key must be " + AES_Constants.TOTAL_WORDS + " words.");
+        }
+        this.w = w.clone();
+        this.dk = KeyExpansion.expandDecryptionKey(this.w);
+    }
+
+    /** Copies both schedules of another context (no expansion). */
+    private AESCipher(AESCipher other) {
+        this.w = other.encryptionSchedule().clone();
+        this.dk = other.dk.clone();
+    }
+
+    /** Independent context for the same key: destroying one leaves the other intact. */
+    AESCipher copy() {
+        return new AESCipher(this);
+    }
+
+    /** Encrypts in[inOff..inOff+15] into out[outOff..outOff+15]; in-place is allowed. */
+    public void encryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        checkLive();
+        AESFastEngine.encryptBlock(w, in, inOff, out, outOff);
+    }
+
+    /** Decrypts in[inOff..inOff+15] into out[outOff..outOff+15]; in-place is allowed. */
+    public void decryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        checkLive();
+        AESFastEngine.decryptBlock(dk, in, inOff, out, outOff);
+    }
+
+    /** Encrypts nBlocks consecutive blocks (ECB) with the interleaved kernel; in-place is allowed. */
+    public void encryptBlocks(byte[] in, int off, int nBlocks, byte[] out, int outOff) {
+        checkLive();
+        AESFastEngine.encryptBlocks(w, in, off, nBlocks, out, outOff);
+    }
+
+    /** Decrypts nBlocks consecutive blocks (ECB) with the interleaved kernel; in-place is allowed. */
+    public void decryptBlocks(byte[] in, int off, int nBlocks, byte[] out, int outOff) {
+        checkLive();
+        AESFastEngine.decryptBlocks(dk, in, off, nBlocks, out, outOff);
+    }
+
+    /*
+     * encrypt (ByteBuffer):
+     * ECB-encrypts the src.remaining() bytes (a multiple of 16) from src into
+     * dst; both positions advance. Heap, direct and mapped buffers are read
+     * and written in place as big-endian words whatever their own byte order
+     * is set to, so off-heap data is never copied into a byte[].
+     * src and dst may be the same buffer region.
+     */
+    public void encrypt(ByteBuffer src, ByteBuffer dst) {
+        crypt(encryptionSchedule(), true, src, dst);
+    }
+
+    /** Inverse of encrypt(ByteBuffer, ByteBuffer). */
+    public void decrypt(ByteBuffer src, ByteBuffer dst) {
+        crypt(decryptionSchedule(), false, src, dst);
+    }
+
+    private static void crypt(int[] schedule, boolean encrypt, ByteBuffer src, ByteBuffer dst) {
+        int len = src.remaining();
+        if (len % AES_Constants.BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Length must be a multiple of " + AES_Constants.BLOCK_SIZE + " bytes.");
+        }
+        if (dst.remaining() < len) {
+            throw new IllegalArgumentException("Output buffer too small: " + dst.remaining() + " < " + len);
+        }
+        ByteBuffer in = src.duplicate().order(ByteOrder.BIG_ENDIAN);
+        ByteBuffer out = dst.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int inPos = in.position(), outPos = out.position();
+        int[] st = new int[AESFastEngine.INTERLEAVE * 4];
+
+        for (int done = 0; done < len; ) {
+            int n = Math.min(AESFastEngine.INTERLEAVE * AES_Constants.BLOCK_SIZE, len - done);
+            int words = n / 4;
+            for (int j = 0; j < words; j++) {
+                st[j] = in.getInt(inPos + done + j * 4);
+            }
+            if (encrypt) {
+                AESFastEngine.encryptWords(schedule, st, words);
+            } else {
+                AESFastEngine.decryptWords(schedule, st, words);
+            }
+            for (int j = 0; j < words; j++) {
+                out.putInt(outPos + done + j * 4, st[j]);
+            }
+            done += n;
+        }
+        src.position(src.position() + len);
+        dst.position(dst.position() + len);
+    }
+
+    /** Zeroizes both schedules; any later use throws IllegalStateException. */
+    public void destroy() {
+        destroyed = true;
+        Arrays.fill(w, 0);
+        Arrays.fill(dk, 0);
+    }
+
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+    /*
+     * encryptionSchedule:
+     * For modes that drive AESFastEngine directly. They fetch it per
+     * operation rather than keeping the array, so a destroyed context is
+     * refused here instead of silently encrypting with zeros.
+     */
+    int[] encryptionSchedule() {
+        checkLive();
+        return w;
+    }
+
+    /** Decryption schedule, for modes that drive AESFastEngine directly; same rule. */
+    int[] decryptionSchedule() {
+        checkLive();
+        return dk;
+    }
+
+    private void checkLive() {
+        if (destroyed) {
+            throw new IllegalStateException("AESCipher has been destroyed.");
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * AESCipherInputStream.java
+ * InputStream that reads from the wrapped stream and returns the data after
+ * it went through an AESStreamCipher.
+ *
+ * The wrapped stream is read CHUNK bytes at a time; when it reaches the end
+ * doFinal is called (which checks and strips the PKCS#7 padding when
+ * decrypting). A padding or length error is reported as an IOException.
+ */
+public class AESCipherInputStream extends FilterInputStream {
+
+    private final AESStreamCipher cipher;
+    private final byte[] inBuf = new byte[AESCipherOutputStream.CHUNK];
+    private final byte[] outBuf = new byte[AESCipherOutputStream.CHUNK + AES_Constants.BLOCK_SIZE];
+    private int outPos, outEnd;
+    private boolean finished;
+
+    public AESCipherInputStream(InputStream in, AESStreamCipher cipher) {
+        super(in);
+        this.cipher = cipher;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) return -1;
+        return outBuf[outPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!fill()) return -1;
+        int n = Math.min(len, outEnd - outPos);
+        System.arraycopy(outBuf, outPos, b, off, n);
+        outPos += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && fill()) {
+            int step = (int) Math.min(n - skipped, outEnd - outPos);
+            outPos += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return outEnd - outPos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported.");
+    }
+
+    /* fill:
+     * Makes sure there is output to hand out; returns false at the end of
+     * the stream. An update() may produce nothing (input still buffered), so
+     * it keeps reading until output appears or the wrapped stream ends. */
+    private boolean fill() throws IOException {
+        while (outPos == outEnd) {
+            if (finished) return false;
+            int n = in.read(inBuf, 0, inBuf.length);
+            outPos = 0;
+            if (n < 0) {
+                finished = true;
+                try {
+                    outEnd = cipher.doFinal(outBuf, 0);
+                } catch (IllegalBlockSizeException | BadPaddingException e) {
+                    outEnd = 0;
+                    throw new IOException(e);
+                }
+            } else {
+                outEnd = cipher.update(inBuf, 0, n, outBuf, 0);
+            }
+        }
+        return true;
+    }
+}
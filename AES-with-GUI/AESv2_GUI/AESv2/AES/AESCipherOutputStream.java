@@ -0,0 +1,64 @@
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * AESCipherOutputStream.java
+ * OutputStream that runs everything written to it through an AESStreamCipher
+ * and passes the result to the wrapped stream.
+ *
+ * Data goes through a fixed buffer of CHUNK bytes, so memory use stays
+ * constant whatever the length of the stream. close() calls doFinal (writing
+ * the PKCS#7 padding when encrypting) before closing the wrapped stream;
+ * flush() cannot push out a partial block.
+ */
+public class AESCipherOutputStream extends FilterOutputStream {
+
+    static final int CHUNK = 8192;
+
+    private final AESStreamCipher cipher;
+    private final byte[] outBuf = new byte[CHUNK + AES_Constants.BLOCK_SIZE];
+    private final byte[] one = new byte[1];
+    private boolean closed;
+
+    public AESCipherOutputStream(OutputStream out, AESStreamCipher cipher) {
+        super(out);
+        this.cipher = cipher;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        one[0] = (byte) b;
+        write(one, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+        while (len > 0) {
+            int n = Math.min(CHUNK, len);
+            int produced = cipher.update(b, off, n, outBuf, 0);
+            out.write(outBuf, 0, produced);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            int produced = cipher.doFinal(outBuf, 0);
+            out.write(outBuf, 0, produced);
+        } catch (IllegalBlockSizeException | BadPaddingException e) {
+            throw new IOException(e);
+        } finally {
+            out.close();
+        }
+    }
+}
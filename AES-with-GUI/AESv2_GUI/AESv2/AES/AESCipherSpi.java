@@ -0,0 +1,348 @@
+import javax.crypto.AEADBadTagException;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.InvalidParameterSpecException;
+import java.util.Arrays;
+
+/**
+ * AESCipherSpi.java
+ * javax.crypto service provider for AES-128 on the fast engine (see AESProvider).
+ *
+ * Modes and paddings:
+ *   ECB, CBC  - NoPadding or PKCS5Padding (PKCS#7 on 16-byte blocks), via AESStreamCipher
+ *   CTR       - NoPadding, via AESStreamCipher
+ *   GCM       - NoPadding, 128-bit tags only, via AES_GCM
+ *
+ * As in SunJCE, encryption without parameters generates a random IV
+ * (read it back with getIV()/getParameters()), and GCM decryption buffers
+ * the ciphertext so that no plaintext is returned before the tag is
+ * verified. A GCM encryption must be re-initialised with a new IV after
+ * doFinal, and init refuses to encrypt under the key and IV of the previous
+ * GCM encryption of this instance ("Cannot reuse iv"). AAD must come before
+ * the first non-empty update(), in both directions.
+ */
+public class AESCipherSpi extends CipherSpi {
+
+    private static final int BS = AES_Constants.BLOCK_SIZE;
+    private static final int GCM_IV_LENGTH = 12;
+    private static final byte[] NO_INPUT = new byte[0]; // Cipher.doFinal() passes a null input
+
+    private AESStreamCipher.Mode mode = AESStreamCipher.Mode.ECB;
+    private boolean gcm;
+    private boolean padding;
+
+    private boolean encrypt;
+    private byte[] iv;
+    private AESStreamCipher stream;
+    private AES_GCM aead;
+    private boolean gcmDone;
+    private boolean dataStarted; // a non-empty update() was seen; no more AAD
+    // key and IV of the last GCM encryption, to refuse their reuse
+    private byte[] lastEncKey;
+    private byte[] lastEncIv;
+    // GCM decryption input (ciphertext || tag), held until doFinal
+    private byte[] held = new byte[0];
+    private int heldLen;
+
+    @Override
+    protected void engineSetMode(String m) throws NoSuchAlgorithmException {
+        gcm = m.equalsIgnoreCase("GCM");
+        if (gcm) return;
+        try {
+            mode = AESStreamCipher.Mode.valueOf(m.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new NoSuchAlgorithmException("Unsupported AES mode: " + m);
+        }
+    }
+
+    @Override
+    protected void engineSetPadding(String pad) throws NoSuchPaddingException {
+        if (pad.equalsIgnoreCase("NoPadding")) {
+            padding = false;
+        } else if (pad.equalsIgnoreCase("PKCS5Padding") && !gcm && mode != AESStreamCipher.Mode.CTR) {
+            padding = true;
+        } else {
+            throw new NoSuchPaddingException("Unsupported padding for this mode: " + pad);
+        }
+    }
+
+    @Override
+    protected int engineGetBlockSize() {
+        return BS;
+    }
+
+    @Override
+    protected int engineGetOutputSize(int inputLen) {
+        if (gcm) {
+            return encrypt ? inputLen + AES_GCM.TAG_LENGTH : Math.max(0, heldLen + inputLen - AES_GCM.TAG_LENGTH);
+        }
+        return stream == null ? inputLen + BS : stream.getOutputSize(inputLen);
+    }
+
+    @Override
+    protected byte[] engineGetIV() {
+        return iv == null ? null : iv.clone();
+    }
+
+    @Override
+    protected AlgorithmParameters engineGetParameters() {
+        if (iv == null) return null;
+        try {
+            AlgorithmParameters params = AlgorithmParameters.getInstance(gcm ? "GCM" : "AES");
+            params.init(gcm ? new GCMParameterSpec(AES_GCM.TAG_LENGTH * 8, iv) : new IvParameterSpec(iv));
+            return params;
+        } catch (NoSuchAlgorithmException | InvalidParameterSpecException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, SecureRandom random) throws InvalidKeyException {
+        try {
+            engineInit(opmode, key, (AlgorithmParameterSpec) null, random);
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new InvalidKeyException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, AlgorithmParameters params, SecureRandom random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        AlgorithmParameterSpec spec = null;
+        if (params != null) {
+            try {
+                spec = gcm ? params.getParameterSpec(GCMParameterSpec.class)
+                        : params.getParameterSpec(IvParameterSpec.class);
+            } catch (InvalidParameterSpecException e) {
+                throw new InvalidAlgorithmParameterException(e);
+            }
+        }
+        engineInit(opmode, key, spec, random);
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, AlgorithmParameterSpec params, SecureRandom random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (opmode != Cipher.ENCRYPT_MODE && opmode != Cipher.DECRYPT_MODE) {
+            throw new InvalidAlgorithmParameterException("Only ENCRYPT_MODE and DECRYPT_MODE are supported.");
+        }
+        byte[] raw = key.getEncoded();
+        if (raw == null || raw.length != 16) {
+            throw new InvalidKeyException("This provider supports 128-bit AES keys only.");
+        }
+        boolean encrypting = opmode == Cipher.ENCRYPT_MODE;
+        if (gcm) {
+            byte[] gcmIv;
+            if (params instanceof GCMParameterSpec) {
+                GCMParameterSpec g = (GCMParameterSpec) params;
+                if (g.getTLen() != AES_GCM.TAG_LENGTH * 8) {
+                    Arrays.fill(raw, (byte) 0);
+                    throw new InvalidAlgorithmParameterException("Only 128-bit GCM tags are supported.");
+                }
+                gcmIv = g.getIV();
+            } else if (params != null) {
+                Arrays.fill(raw, (byte) 0);
+                throw new InvalidAlgorithmParameterException("GCM needs a GCMParameterSpec.");
+            } else if (encrypting) {
+                gcmIv = randomIv(GCM_IV_LENGTH, random);
+            } else {
+                Arrays.fill(raw, (byte) 0);
+                throw new InvalidAlgorithmParameterException("GCM decryption needs parameters.");
+            }
+            if (encrypting) {
+                if (lastEncKey != null && MessageDigest.isEqual(raw, lastEncKey) && Arrays.equals(gcmIv, lastEncIv)) {
+                    Arrays.fill(raw, (byte) 0);
+                    throw new InvalidAlgorithmParameterException("Cannot reuse iv for GCM encryption");
+                }
+                if (lastEncKey != null) {
+                    Arrays.fill(lastEncKey, (byte) 0);
+                }
+                lastEncKey = raw.clone();
+                lastEncIv = gcmIv.clone();
+            }
+            encrypt = encrypting;
+            iv = gcmIv;
+            aead = new AES_GCM(new AESCipher(raw));
+            Arrays.fill(raw, (byte) 0);
+            aead.init(encrypt, iv);
+            gcmDone = false;
+            dataStarted = false;
+            heldLen = 0;
+            return;
+        }
+
+        encrypt = encrypting;
+        AESCipher cipher = new AESCipher(raw);
+        Arrays.fill(raw, (byte) 0);
+        iv = null;
+
+        if (mode != AESStreamCipher.Mode.ECB) {
+            if (params instanceof IvParameterSpec) {
+                iv = ((IvParameterSpec) params).getIV();
+                if (iv.length != BS) {
+                    throw new InvalidAlgorithmParameterException("AES IV must be 16 bytes.");
+                }
+            } else if (params != null) {
+                throw new InvalidAlgorithmParameterException(mode + " needs an IvParameterSpec.");
+            } else if (encrypt) {
+                iv = randomIv(BS, random);
+            } else {
+                throw new InvalidAlgorithmParameterException(mode + " decryption needs an IV.");
+            }
+        } else if (params != null) {
+            throw new InvalidAlgorithmParameterException("ECB takes no parameters.");
+        }
+        stream = new AESStreamCipher(mode, encrypt, cipher, iv, padding);
+    }
+
+    @Override
+    protected void engineUpdateAAD(byte[] src, int offset, int len) {
+        if (!gcm) {
+            throw new IllegalStateException("AAD is only used in GCM mode.");
+        }
+        checkGcmState();
+        if (dataStarted) {
+            throw new IllegalStateException("AAD must be supplied before any data.");
+        }
+        aead.updateAAD(src, offset, len);
+    }
+
+    @Override
+    protected byte[] engineUpdate(byte[] input, int inputOffset, int inputLen) {
+        byte[] out = new byte[updateOutputSize(inputLen)];
+        int n = update(input, inputOffset, inputLen, out, 0);
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    @Override
+    protected int engineUpdate(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset)
+            throws ShortBufferException {
+        if (output.length - outputOffset < updateOutputSize(inputLen)) {
+            throw new ShortBufferException("Need " + updateOutputSize(inputLen) + " bytes of output space.");
+        }
+        return update(input, inputOffset, inputLen, output, outputOffset);
+    }
+
+    @Override
+    protected byte[] engineDoFinal(byte[] input, int inputOffset, int inputLen)
+            throws IllegalBlockSizeException, BadPaddingException {
+        byte[] out = new byte[engineGetOutputSize(inputLen)];
+        int n = doFinal(input, inputOffset, inputLen, out, 0);
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    @Override
+    protected int engineDoFinal(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset)
+            throws ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+        if (output.length - outputOffset < engineGetOutputSize(inputLen)) {
+            throw new ShortBufferException("Need " + engineGetOutputSize(inputLen) + " bytes of output space.");
+        }
+        return doFinal(input, inputOffset, inputLen, output, outputOffset);
+    }
+
+    private int updateOutputSize(int inputLen) {
+        if (gcm) return encrypt ? inputLen : 0;
+        return stream.getOutputSize(inputLen);
+    }
+
+    private int update(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        if (in == null) in = NO_INPUT;
+        if (!gcm) {
+            checkInitialized();
+            return stream.update(in, inOff, len, out, outOff);
+        }
+        checkGcmState();
+        if (len == 0) {
+            return 0; // as in SunJCE, an empty update does not end the AAD
+        }
+        dataStarted = true;
+        if (encrypt) {
+            return aead.update(in, inOff, len, out, outOff);
+        }
+        hold(in, inOff, len);
+        return 0;
+    }
+
+    private int doFinal(byte[] in, int inOff, int len, byte[] out, int outOff)
+            throws IllegalBlockSizeException, BadPaddingException {
+        if (in == null) in = NO_INPUT;
+        if (!gcm) {
+            checkInitialized();
+            int n = stream.update(in, inOff, len, out, outOff);
+            return n + stream.doFinal(out, outOff + n);
+        }
+        checkGcmState();
+        try {
+            if (encrypt) {
+                int n = aead.update(in, inOff, len, out, outOff);
+                aead.doFinal(out, outOff + n);
+                gcmDone = true;
+                return n + AES_GCM.TAG_LENGTH;
+            }
+            hold(in, inOff, len);
+            if (heldLen < AES_GCM.TAG_LENGTH) {
+                throw new AEADBadTagException("Input shorter than the GCM tag.");
+            }
+            int ctLen = heldLen - AES_GCM.TAG_LENGTH;
+            byte[] pt = new byte[ctLen];
+            aead.update(held, 0, ctLen, pt, 0);
+            try {
+                aead.doFinal(held, ctLen);
+            } catch (AEADBadTagException e) {
+                Arrays.fill(pt, (byte) 0);
+                throw e;
+            }
+            System.arraycopy(pt, 0, out, outOff, ctLen);
+            return ctLen;
+        } finally {
+            heldLen = 0;
+            dataStarted = false;
+            if (!encrypt) {
+                aead.init(false, iv); // ready for the next decryption with the same parameters
+            }
+        }
+    }
+
+    private void hold(byte[] in, int inOff, int len) {
+        if (heldLen + len > held.length) {
+            held = Arrays.copyOf(held, Math.max(heldLen + len, held.length * 2));
+        }
+        System.arraycopy(in, inOff, held, heldLen, len);
+        heldLen += len;
+    }
+
+    private void checkInitialized() {
+        if (stream == null) {
+            throw new IllegalStateException("Cipher not initialized.");
+        }
+    }
+
+    private void checkGcmState() {
+        if (aead == null) {
+            throw new IllegalStateException("Cipher not initialized.");
+        }
+        if (gcmDone) {
+            throw new IllegalStateException("GCM encryption needs a new IV: re-initialise the cipher.");
+        }
+    }
+
+    private static byte[] randomIv(int length, SecureRandom random) {
+        byte[] iv = new byte[length];
+        (random != null ? random : new SecureRandom()).nextBytes(iv);
+        return iv;
+    }
+}
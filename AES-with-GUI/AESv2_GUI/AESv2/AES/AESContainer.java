@@ -0,0 +1,710 @@
+import javax.crypto.AEADBadTagException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * AESContainer.java
+ * Chunked, authenticated on-disk container for large files (AES-128-GCM).
+ *
+ * Layout (all integers big-endian):
+ *
+ *   header   96 bytes  "AESC" | version 2 | 3 zero bytes | chunk size (4)
+ *                      | salt (16) | generation (4) | resume table (16 x 4)
+ *   chunk i  GCM(plaintext chunk i) || 16-byte tag, at
+ *            HEADER_SIZE + i * (chunkSize + TAG_LENGTH)
+ *   footer   32 bytes  chunk count (8) | plaintext length (8) | tag (16)
+ *
+ * Keys: every container is sealed under its own key, derived from the
+ * caller's key and the random salt with the SP 800-108 counter-mode KDF
+ * over AES-CMAC. Nonces therefore only have to be unique within one
+ * container, instead of across every container ever written under the
+ * caller's key (with a random per-container nonce prefix that is a
+ * birthday bound of a few hundred million containers).
+ *
+ * Each chunk is sealed on its own, STREAM-style (Hoang et al., "Online
+ * authenticated-encryption and its nonce-reuse misuse-resistance"): the
+ * nonce is generation (4) || chunk index (4) || 3 zero bytes || final flag
+ * (1), and the fixed part of the header (the first 28 bytes) is the AAD.
+ * Reordering, dropping or duplicating chunks, or cutting the file after a
+ * chunk, changes a nonce and fails the tag. Every chunk but the last holds
+ * exactly chunkSize bytes; the last one has the final flag set and may be
+ * shorter (or empty).
+ *
+ * Generations: a fresh container is generation 0. Writer.resume() bumps
+ * the generation and records in the resume table the index of the first
+ * chunk it will seal, so a chunk that is cut off and written again (torn,
+ * or a final chunk whose footer never made it to disk) gets a new nonce,
+ * even if a copy of the old file is still around. At most MAX_RESUMES
+ * resumes are possible. Two resumes of copies of the same unfinished file
+ * would pick the same generation; resume one copy only.
+ *
+ * The footer is the index: with fixed-size chunks, chunk i is at a computed
+ * offset, so the footer only needs the chunk count and the plaintext length.
+ * Its tag (nonce generation || 0 || 0 0 0 || 2, a flag no chunk uses) also
+ * covers the whole header, so it authenticates the generation boundaries.
+ * Reader.open reads header and footer, and readChunk(i) then decrypts any
+ * chunk in O(1) without touching the others.
+ *
+ * Writer and Reader.decryptTo seal and open chunks on a ForkJoinPool with
+ * at most maxInFlight chunks in memory, and write the results in order.
+ * Chunk writes are not forced one by one, so after an OS crash any chunk
+ * may be missing; Writer.resume() verifies every chunk and keeps the ones
+ * before the first that does not verify.
+ *
+ * Usage:
+ *   java AESContainer pack|unpack <key-source> <input> <output> [threads]
+ * where <key-source> is env:NAME, file:PATH or - (standard input), as for
+ * AESFileTool.
+ */
+public class AESContainer {
+
+    public static final int HEADER_SIZE = 96;
+    public static final int FOOTER_SIZE = 32;
+    public static final int TAG_LENGTH = AES_GCM.TAG_LENGTH;
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int MAX_CHUNK_SIZE = 16 << 20;
+    public static final int MAX_RESUMES = 16; // entries in the header's resume table
+
+    private static final byte[] MAGIC = {'A', 'E', 'S', 'C'};
+    private static final byte VERSION = 2;
+    private static final int SALT_LENGTH = 16;
+    private static final int FIXED_HEADER = 28;     // magic .. salt: the chunk AAD
+    private static final int GENERATION_OFFSET = 28;
+    private static final int TABLE_OFFSET = 32;     // resume table: first chunk of generation 1, 2, ...
+    private static final byte[] KDF_LABEL = "AESContainer".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    private static final long MAX_CHUNKS = 0xFFFFFFFFL; // 32-bit chunk index in the nonce
+    private static final byte FLAG_CHUNK = 0, FLAG_FINAL = 1, FLAG_FOOTER = 2;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4 || !(args[0].equals("pack") || args[0].equals("unpack"))) {
+            System.out.println("Usage: java AESContainer pack|unpack env:NAME|file:PATH|- <input> <output> [threads]");
+            System.exit(2);
+        }
+        byte[] key = AES_Utils.readKey(args[1], 16);
+        AESCipher cipher = new AESCipher(key);
+        Arrays.fill(key, (byte) 0);
+        Path input = Paths.get(args[2]);
+        Path output = Paths.get(args[3]);
+        AES_Utils.requireDistinct(input, output);
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        long bytes;
+        try {
+            if (args[0].equals("pack")) {
+                try (InputStream in = Files.newInputStream(input);
+                     Writer w = Writer.create(output, cipher, DEFAULT_CHUNK_SIZE, pool, 4 * threads)) {
+                    byte[] buf = new byte[1 << 20];
+                    for (int n; (n = in.read(buf)) > 0; ) {
+                        w.write(buf, 0, n);
+                    }
+                    bytes = w.position();
+                }
+            } else {
+                try (Reader r = Reader.open(input, cipher);
+                     FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE,
+                             StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    bytes = r.decryptTo(out, pool, 4 * threads);
+                }
+            }
+        } finally {
+            pool.shutdown();
+            cipher.destroy();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %d bytes in %.2f s (%.1f MB/s, %d threads)%n",
+                args[0], bytes, seconds, bytes / seconds / (1 << 20), threads);
+    }
+
+    /* Writes a container chunk by chunk; close() seals the last chunk and writes the footer. */
+    public static final class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final Sealer sealer;
+        private final ForkJoinPool pool;
+        private final int maxInFlight;
+
+        private final ArrayDeque<Pending> inFlight = new ArrayDeque<>();
+        private final ArrayDeque<byte[]> spare = new ArrayDeque<>();
+        private byte[] buf;
+        private int bufLen;
+        private long nextIndex;   // index of the chunk in buf
+        private long nextWrite;   // index of the next chunk to reach the file
+        private int lastLength;
+        private boolean closed;
+
+        private Writer(FileChannel channel, Sealer sealer, ForkJoinPool pool, int maxInFlight, long firstIndex) {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("maxInFlight must be at least 1.");
+            }
+            this.channel = channel;
+            this.sealer = sealer;
+            this.pool = pool;
+            this.maxInFlight = maxInFlight;
+            this.nextIndex = firstIndex;
+            this.nextWrite = firstIndex;
+            this.buf = new byte[sealer.chunkSize + TAG_LENGTH];
+        }
+
+        /** Creates (or truncates) path and writes a header with a fresh random salt. */
+        public static Writer create(Path path, AESCipher cipher, int chunkSize, ForkJoinPool pool, int maxInFlight)
+                throws IOException {
+            if (chunkSize < AES_Constants.BLOCK_SIZE || chunkSize > MAX_CHUNK_SIZE) {
+                throw new IllegalArgumentException("Chunk size must be between " + AES_Constants.BLOCK_SIZE
+                        + " and " + MAX_CHUNK_SIZE + " bytes.");
+            }
+            byte[] salt = new byte[SALT_LENGTH];
+            new SecureRandom().nextBytes(salt);
+            Sealer sealer = new Sealer(cipher, header(chunkSize, salt));
+            FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                writeFully(ch, ByteBuffer.wrap(sealer.header), 0);
+            } catch (IOException e) {
+                sealer.destroy();
+                ch.close();
+                throw e;
+            }
+            return new Writer(ch, sealer, pool, maxInFlight, 0);
+        }
+
+        /*
+         * resume:
+         * Reopens an unfinished container (no footer yet). Every complete
+         * chunk is verified (on the pool, maxInFlight at a time); the file is
+         * cut before the first one that fails, which drops a torn or missing
+         * chunk, an already sealed final chunk and everything after them.
+         * The header then gets the next generation, and is forced to disk
+         * before anything is sealed under it. Nothing is cut or rewritten
+         * unless chunk 0 verifies (as a chunk or as the final chunk), which
+         * proves the key; a wrong key, or a container whose first chunk is
+         * torn, throws AEADBadTagException and leaves the file as it was
+         * (the latter holds no data, so create it again). A file holding
+         * only the header is resumed as is. position() tells how many
+         * plaintext bytes are kept; the caller continues writing from that
+         * offset of its input.
+         */
+        public static Writer resume(Path path, AESCipher cipher, ForkJoinPool pool, int maxInFlight)
+                throws IOException, AEADBadTagException {
+            FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Sealer old = null;
+            try {
+                byte[] header = readHeader(ch);
+                old = new Sealer(cipher, header);
+                if (old.footerValid(ch)) {
+                    throw new IllegalStateException("Container is already complete.");
+                }
+                if (old.generation >= MAX_RESUMES) {
+                    throw new IOException("Container was resumed " + MAX_RESUMES + " times already.");
+                }
+                long stride = old.chunkSize + TAG_LENGTH;
+                long complete = (ch.size() - HEADER_SIZE) / stride;
+                long kept = old.verifiedPrefix(ch, complete, pool, maxInFlight);
+                if (kept == 0 && ch.size() > HEADER_SIZE && !old.firstChunkFinal(ch)) {
+                    throw new AEADBadTagException("Chunk 0 does not verify: wrong key or corrupted container.");
+                }
+
+                ByteBuffer.wrap(header).putInt(GENERATION_OFFSET, old.generation + 1)
+                        .putInt(TABLE_OFFSET + 4 * old.generation, (int) kept);
+                ch.truncate(HEADER_SIZE + kept * stride);
+                writeFully(ch, ByteBuffer.wrap(header), 0);
+                ch.force(true);
+                return new Writer(ch, new Sealer(cipher, header), pool, maxInFlight, kept);
+            } catch (IOException | RuntimeException | AEADBadTagException e) {
+                ch.close();
+                throw e;
+            } finally {
+                if (old != null) {
+                    old.destroy();
+                }
+            }
+        }
+
+        /** Plaintext bytes written so far, including those stored before a resume. */
+        public long position() {
+            return nextIndex * sealer.chunkSize + bufLen;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Writer is closed.");
+            }
+            while (len > 0) {
+                if (bufLen == sealer.chunkSize) {
+                    submit(false); // more data follows, so this chunk is not the last
+                }
+                int n = Math.min(len, sealer.chunkSize - bufLen);
+                System.arraycopy(b, off, buf, bufLen, n);
+                bufLen += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /** Seals the buffered data as the final chunk, writes the footer and closes the file. */
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                submit(true);
+                while (!inFlight.isEmpty()) {
+                    drainOne();
+                }
+                long count = nextIndex;
+                long length = (count - 1) * sealer.chunkSize + lastLength;
+                writeFully(channel, ByteBuffer.wrap(sealer.footer(count, length)), channel.size());
+                channel.force(false);
+            } finally {
+                sealer.destroy();
+                channel.close();
+            }
+        }
+
+        private void submit(boolean last) throws IOException {
+            if (nextIndex >= MAX_CHUNKS) {
+                throw new IOException("Container holds at most " + MAX_CHUNKS + " chunks.");
+            }
+            while (inFlight.size() >= maxInFlight) {
+                drainOne();
+            }
+            final byte[] data = buf;
+            final int len = bufLen;
+            final long index = nextIndex++;
+            inFlight.add(new Pending(pool.submit(() -> {
+                sealer.seal(index, last, data, len);
+                return data;
+            }), len));
+            if (last) {
+                lastLength = len;
+            }
+            buf = spare.isEmpty() ? new byte[sealer.chunkSize + TAG_LENGTH] : spare.pop();
+            bufLen = 0;
+        }
+
+        /* drainOne: waits for the oldest chunk and appends it, so chunks reach the file in order. */
+        private void drainOne() throws IOException {
+            Pending p = inFlight.poll();
+            byte[] sealed;
+            try {
+                sealed = await(p.task);
+            } catch (AEADBadTagException e) {
+                throw new IllegalStateException(e); // sealing never checks a tag
+            }
+            long index = nextWrite++;
+            writeFully(channel, ByteBuffer.wrap(sealed, 0, p.length + TAG_LENGTH),
+                    HEADER_SIZE + index * (sealer.chunkSize + (long) TAG_LENGTH));
+            spare.push(sealed);
+        }
+    }
+
+    private static final class Pending {
+        final ForkJoinTask<byte[]> task;
+        final int length;
+
+        Pending(ForkJoinTask<byte[]> task, int length) {
+            this.task = task;
+            this.length = length;
+        }
+    }
+
+    /* Opens a complete container for random access and parallel extraction. */
+    public static final class Reader implements Closeable {
+
+        private final FileChannel channel;
+        private final Sealer sealer;
+        private final long chunkCount;
+        private final long size;
+
+        private Reader(FileChannel channel, Sealer sealer, long chunkCount, long size) {
+            this.channel = channel;
+            this.sealer = sealer;
+            this.chunkCount = chunkCount;
+            this.size = size;
+        }
+
+        /** Reads and verifies header and footer; no chunk is read yet. */
+        public static Reader open(Path path, AESCipher cipher) throws IOException, AEADBadTagException {
+            FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+            Sealer sealer = null;
+            try {
+                sealer = new Sealer(cipher, readHeader(ch));
+                if (ch.size() < HEADER_SIZE + TAG_LENGTH + FOOTER_SIZE) {
+                    throw new IOException("Container is truncated (no footer).");
+                }
+                byte[] footer = new byte[FOOTER_SIZE];
+                readFully(ch, ByteBuffer.wrap(footer), ch.size() - FOOTER_SIZE);
+                if (!sealer.footerValid(footer)) {
+                    throw new AEADBadTagException("Container footer does not verify: wrong key, or truncated/corrupted file.");
+                }
+                ByteBuffer f = ByteBuffer.wrap(footer);
+                long count = f.getLong();
+                long length = f.getLong();
+                long expected = Math.max(1, (length + sealer.chunkSize - 1) / sealer.chunkSize);
+                if (count != expected
+                        || ch.size() != HEADER_SIZE + length + count * TAG_LENGTH + FOOTER_SIZE) {
+                    throw new IOException("Container size does not match its footer.");
+                }
+                return new Reader(ch, sealer, count, length);
+            } catch (IOException | RuntimeException | AEADBadTagException e) {
+                if (sealer != null) {
+                    sealer.destroy();
+                }
+                ch.close();
+                throw e;
+            }
+        }
+
+        public int chunkSize() {
+            return sealer.chunkSize;
+        }
+
+        public long chunkCount() {
+            return chunkCount;
+        }
+
+        /** Plaintext length. */
+        public long size() {
+            return size;
+        }
+
+        /** Plaintext length of chunk index. */
+        public int chunkLength(long index) {
+            checkIndex(index);
+            return index < chunkCount - 1 ? sealer.chunkSize : (int) (size - index * sealer.chunkSize);
+        }
+
+        /*
+         * readChunk:
+         * Decrypts chunk index into out[off..] and returns its length. Needs
+         * chunkLength(index) bytes of room. Safe to call from several threads.
+         */
+        public int readChunk(long index, byte[] out, int off) throws IOException, AEADBadTagException {
+            int len = chunkLength(index);
+            byte[] chunk = new byte[len + TAG_LENGTH];
+            readFully(channel, ByteBuffer.wrap(chunk), HEADER_SIZE + index * (sealer.chunkSize + (long) TAG_LENGTH));
+            if (!sealer.open(index, index == chunkCount - 1, chunk, len)) {
+                throw new AEADBadTagException("Chunk " + index + " does not verify.");
+            }
+            System.arraycopy(chunk, 0, out, off, len);
+            Arrays.fill(chunk, (byte) 0);
+            return len;
+        }
+
+        /*
+         * decryptTo:
+         * Decrypts every chunk on the pool, at most maxInFlight at a time,
+         * and writes the plaintext to out in order. Stops at the first chunk
+         * that fails to verify; everything written before it is authentic.
+         */
+        public long decryptTo(WritableByteChannel out, ForkJoinPool pool, int maxInFlight)
+                throws IOException, AEADBadTagException {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("maxInFlight must be at least 1.");
+            }
+            ArrayDeque<ForkJoinTask<byte[]>> inFlight = new ArrayDeque<>();
+            long next = 0;
+            long written = 0;
+            while (next < chunkCount || !inFlight.isEmpty()) {
+                while (next < chunkCount && inFlight.size() < maxInFlight) {
+                    final long index = next++;
+                    inFlight.add(pool.submit(() -> {
+                        byte[] pt = new byte[chunkLength(index)];
+                        readChunk(index, pt, 0);
+                        return pt;
+                    }));
+                }
+                byte[] pt = await(inFlight.poll());
+                ByteBuffer b = ByteBuffer.wrap(pt);
+                while (b.hasRemaining()) {
+                    out.write(b);
+                }
+                written += pt.length;
+            }
+            return written;
+        }
+
+        @Override
+        public void close() throws IOException {
+            sealer.destroy();
+            channel.close();
+        }
+
+        private void checkIndex(long index) {
+            if (index < 0 || index >= chunkCount) {
+                throw new IllegalArgumentException("Chunk index " + index + " out of range [0, " + chunkCount + ").");
+            }
+        }
+    }
+
+    /*
+     * Sealer:
+     * Container key, header and per-thread AES_GCM instances shared by a
+     * Writer or Reader. The GCM objects are stateful, so each worker thread
+     * keeps its own; they all share the one derived AESCipher schedule.
+     */
+    private static final class Sealer {
+        final byte[] header;
+        final int chunkSize;
+        final int generation;
+        private final long[] starts; // starts[k]: first chunk sealed in generation k
+        private final AESCipher key;
+        private final ThreadLocal<AES_GCM> gcm;
+
+        Sealer(AESCipher cipher, byte[] header) {
+            ByteBuffer h = ByteBuffer.wrap(header);
+            this.header = header;
+            this.chunkSize = h.getInt(8);
+            this.generation = h.getInt(GENERATION_OFFSET);
+            this.starts = new long[generation + 1];
+            for (int k = 1; k <= generation; k++) {
+                starts[k] = h.getInt(TABLE_OFFSET + 4 * (k - 1)) & 0xFFFFFFFFL;
+            }
+            this.key = containerKey(cipher, Arrays.copyOfRange(header, 12, 12 + SALT_LENGTH));
+            this.gcm = ThreadLocal.withInitial(() -> new AES_GCM(key));
+        }
+
+        /** Encrypts data[0..len) in place and appends the tag at data[len]. */
+        void seal(long index, boolean last, byte[] data, int len) {
+            AES_GCM g = gcm.get();
+            g.init(true, nonce(generationOf(index), index, last ? FLAG_FINAL : FLAG_CHUNK));
+            g.updateAAD(header, 0, FIXED_HEADER);
+            g.update(data, 0, len, data, 0);
+            try {
+                g.doFinal(data, len);
+            } catch (AEADBadTagException e) {
+                throw new IllegalStateException(e); // not thrown when encrypting
+            }
+        }
+
+        /** Decrypts data[0..len) in place if the tag at data[len] verifies; wipes it otherwise. */
+        boolean open(long index, boolean last, byte[] data, int len) {
+            AES_GCM g = gcm.get();
+            g.init(false, nonce(generationOf(index), index, last ? FLAG_FINAL : FLAG_CHUNK));
+            g.updateAAD(header, 0, FIXED_HEADER);
+            g.update(data, 0, len, data, 0);
+            try {
+                g.doFinal(data, len);
+                return true;
+            } catch (AEADBadTagException e) {
+                Arrays.fill(data, 0, len, (byte) 0);
+                return false;
+            }
+        }
+
+        /*
+         * verifiedPrefix:
+         * Number of leading chunks among the first 'complete' full-size ones
+         * that verify as non-final chunks. Opens them on the pool in order,
+         * maxInFlight at a time, and stops waiting at the first failure.
+         */
+        long verifiedPrefix(FileChannel ch, long complete, ForkJoinPool pool, int maxInFlight)
+                throws IOException, AEADBadTagException {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("maxInFlight must be at least 1.");
+            }
+            long stride = chunkSize + TAG_LENGTH;
+            ArrayDeque<ForkJoinTask<Boolean>> inFlight = new ArrayDeque<>();
+            long next = 0;
+            long kept = 0;
+            try {
+                while (kept < complete) {
+                    while (next < complete && inFlight.size() < maxInFlight) {
+                        final long index = next++;
+                        inFlight.add(pool.submit(() -> {
+                            byte[] chunk = new byte[(int) stride];
+                            readFully(ch, ByteBuffer.wrap(chunk), HEADER_SIZE + index * stride);
+                            boolean ok = open(index, false, chunk, chunkSize);
+                            Arrays.fill(chunk, (byte) 0);
+                            return ok;
+                        }));
+                    }
+                    if (!await(inFlight.poll())) {
+                        break;
+                    }
+                    kept++;
+                }
+            } finally {
+                for (ForkJoinTask<Boolean> t : inFlight) {
+                    t.cancel(false);
+                }
+            }
+            return kept;
+        }
+
+        /* firstChunkFinal: whether the bytes after the header start with a valid final chunk 0. */
+        boolean firstChunkFinal(FileChannel ch) throws IOException {
+            int n = (int) Math.min(chunkSize + TAG_LENGTH, ch.size() - HEADER_SIZE);
+            if (n < TAG_LENGTH) {
+                return false;
+            }
+            byte[] chunk = new byte[n];
+            readFully(ch, ByteBuffer.wrap(chunk), HEADER_SIZE);
+            boolean ok = open(0, true, chunk, n - TAG_LENGTH);
+            Arrays.fill(chunk, (byte) 0);
+            return ok;
+        }
+
+        byte[] footer(long count, long length) {
+            byte[] footer = new byte[FOOTER_SIZE];
+            ByteBuffer.wrap(footer).putLong(count).putLong(length);
+            AES_GCM g = gcm.get();
+            g.init(true, nonce(generation, 0, FLAG_FOOTER));
+            g.updateAAD(header, 0, HEADER_SIZE);
+            g.updateAAD(footer, 0, 16);
+            try {
+                g.doFinal(footer, 16);
+            } catch (AEADBadTagException e) {
+                throw new IllegalStateException(e);
+            }
+            return footer;
+        }
+
+        boolean footerValid(byte[] footer) {
+            AES_GCM g = gcm.get();
+            g.init(false, nonce(generation, 0, FLAG_FOOTER));
+            g.updateAAD(header, 0, HEADER_SIZE);
+            g.updateAAD(footer, 0, 16);
+            try {
+                g.doFinal(footer, 16);
+                return true;
+            } catch (AEADBadTagException e) {
+                return false;
+            }
+        }
+
+        boolean footerValid(FileChannel ch) throws IOException {
+            if (ch.size() < HEADER_SIZE + FOOTER_SIZE) {
+                return false;
+            }
+            byte[] footer = new byte[FOOTER_SIZE];
+            readFully(ch, ByteBuffer.wrap(footer), ch.size() - FOOTER_SIZE);
+            return footerValid(footer);
+        }
+
+        void destroy() {
+            key.destroy();
+        }
+
+        /* generationOf: the generation that sealed chunk index, from the resume table. */
+        private int generationOf(long index) {
+            int k = generation;
+            while (k > 0 && index < starts[k]) {
+                k--;
+            }
+            return k;
+        }
+
+        /* nonce: generation (4) || chunk index (4) || 0 0 0 || flag (1). */
+        private static byte[] nonce(int generation, long index, byte flag) {
+            byte[] n = new byte[12];
+            AES_Utils.storeWord(generation, n, 0);
+            AES_Utils.storeWord((int) index, n, 4);
+            n[11] = flag;
+            return n;
+        }
+    }
+
+    /*
+     * containerKey:
+     * K_c = CMAC_K([1]_32 || "AESContainer" || 0x00 || salt || [128]_32),
+     * the SP 800-108 KDF in counter mode with one 128-bit output block.
+     */
+    private static AESCipher containerKey(AESCipher cipher, byte[] salt) {
+        ByteBuffer input = ByteBuffer.allocate(4 + KDF_LABEL.length + 1 + SALT_LENGTH + 4);
+        input.putInt(1).put(KDF_LABEL).put((byte) 0).put(salt).putInt(128);
+        byte[] k = new AES_CMAC(cipher).mac(input.array());
+        try {
+            return new AESCipher(k);
+        } finally {
+            Arrays.fill(k, (byte) 0);
+        }
+    }
+
+    private static byte[] header(int chunkSize, byte[] salt) {
+        byte[] h = new byte[HEADER_SIZE];
+        ByteBuffer b = ByteBuffer.wrap(h);
+        b.put(MAGIC).put(VERSION).position(8);
+        b.putInt(chunkSize).put(salt); // generation 0, empty resume table
+        return h;
+    }
+
+    private static byte[] readHeader(FileChannel ch) throws IOException {
+        if (ch.size() < HEADER_SIZE) {
+            throw new IOException("File too short for the container header.");
+        }
+        byte[] h = new byte[HEADER_SIZE];
+        readFully(ch, ByteBuffer.wrap(h), 0);
+        if (!Arrays.equals(h, 0, 4, MAGIC, 0, 4) || h[4] != VERSION) {
+            throw new IOException("Not an AESContainer file (or unsupported version).");
+        }
+        ByteBuffer b = ByteBuffer.wrap(h);
+        int chunkSize = b.getInt(8);
+        if (chunkSize < AES_Constants.BLOCK_SIZE || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IOException("Invalid chunk size in header: " + chunkSize);
+        }
+        int generation = b.getInt(GENERATION_OFFSET);
+        if (generation < 0 || generation > MAX_RESUMES) {
+            throw new IOException("Invalid generation in header: " + generation);
+        }
+        long previous = 0;
+        for (int k = 0; k < generation; k++) {
+            long start = b.getInt(TABLE_OFFSET + 4 * k) & 0xFFFFFFFFL;
+            if (start < previous) {
+                throw new IOException("Resume table in header is not in order.");
+            }
+            previous = start;
+        }
+        return h;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos);
+            if (n < 0) {
+                throw new IOException("Unexpected end of file at offset " + pos + ".");
+            }
+            pos += n;
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            pos += ch.write(buf, pos);
+        }
+    }
+
+    /* await: joins a worker task, rethrowing its IOException or tag failure as such. */
+    private static <T> T await(ForkJoinTask<T> task) throws IOException, AEADBadTagException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a chunk.", e);
+        } catch (ExecutionException e) {
+            // ForkJoinTask wraps checked exceptions of a Callable in RuntimeExceptions
+            for (Throwable t = e.getCause(); t != null; t = t.getCause()) {
+                if (t instanceof IOException) throw (IOException) t;
+                if (t instanceof AEADBadTagException) throw (AEADBadTagException) t;
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+}
@@ -88,10 +88,7 @@ public class AESCore {
      * Multiply a byte by 2 in GF(2^8) with AES reduction (x^8 + x^4 + x^3 + x + 1).
      */
     private static byte mul2(byte b) {
-        int v = (b & 0xFF) << 1; // shift  by 1 (multiply by 2) mean also miltiply the polynomial by x
-        if ((b & 0x80) != 0) // if it exeed 8 bits then we need to %
-            v ^= 0x1B; // the irreducible polynomial 27 to make it 8 bits
-        return (byte) v;
+        return (byte) GaloisField.xtime(b);
     }
 
     /*
@@ -99,7 +96,7 @@ public class AESCore {
      * Multiply a byte by 3 in GF(2^8). (3*b = 2*b XOR b)
      */
     private static byte mul3(byte b) {
-        return (byte) (mul2(b) ^ b);
+        return (byte) GaloisField.gMul(b, 3);
     }
 
     /*
@@ -123,28 +120,28 @@ public class AESCore {
      * mul9 = (8*b) XOR b
      */
     private static byte mul9(byte b) {
-        return (byte) (mul2(mul2(mul2(b))) ^ b);
+        return (byte) GaloisField.gMul(b, 9);
     }
 
     /*
      * mul11 = (8*b) XOR (2*b) XOR b
      */
     private static byte mul11(byte b) {
-        return (byte) (mul2(mul2(mul2(b))) ^ mul2(b) ^ b);
+        return (byte) GaloisField.gMul(b, 11);
     }
 
     /*
      * mul13 = (8*b) XOR (4*b) XOR b
      */
     private static byte mul13(byte b) {
-        return (byte) (mul2(mul2(mul2(b))) ^ mul2(mul2(b)) ^ b);
+        return (byte) GaloisField.gMul(b, 13);
     }
 
     /*
      * mul14 = (8*b) XOR (4*b) XOR (2*b)
      */
     private static byte mul14(byte b) {
-        return (byte) (mul2(mul2(mul2(b))) ^ mul2(mul2(b)) ^ mul2(b));
+        return (byte) GaloisField.gMul(b, 14);
     }
 
     /*
@@ -0,0 +1,39 @@
+import java.security.SecureRandom;
+import java.security.SecureRandomSpi;
+
+/**
+ * AESDRBGSpi.java
+ * SecureRandom service "AES-CTR-DRBG" (see AESProvider) backed by the
+ * calling thread's AES_CTRDRBG.current() instance.
+ *
+ * The service is registered with ThreadSafe=true, so SecureRandom does not
+ * serialize callers on a lock: every thread that calls nextBytes on one
+ * shared SecureRandom object draws from its own DRBG and buffer.
+ */
+public class AESDRBGSpi extends SecureRandomSpi {
+
+    private static final SecureRandom SEED_SOURCE = new SecureRandom();
+
+    /** Mixes seed into the calling thread's DRBG as additional input of a reseed. */
+    @Override
+    protected void engineSetSeed(byte[] seed) {
+        // longer seeds are folded into 32-byte pieces, one reseed each
+        for (int off = 0; off < seed.length; off += AES_CTRDRBG.SEED_LENGTH) {
+            int n = Math.min(AES_CTRDRBG.SEED_LENGTH, seed.length - off);
+            byte[] piece = new byte[n];
+            System.arraycopy(seed, off, piece, 0, n);
+            AES_CTRDRBG.current().reseed(piece);
+        }
+    }
+
+    @Override
+    protected void engineNextBytes(byte[] bytes) {
+        AES_CTRDRBG.current().nextBytes(bytes);
+    }
+
+    /** Seed bytes come from the platform source, not from the DRBG output. */
+    @Override
+    protected byte[] engineGenerateSeed(int numBytes) {
+        return SEED_SOURCE.generateSeed(numBytes);
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * AESFastEngine.java
+ * Word-oriented AES-128 engine for production use.
+ *
+ * The state is kept as four int columns (MSB = row 0) instead of a byte[4][4]
+ * matrix, and each full round fuses SubBytes, ShiftRows and MixColumns into
+ * lookups in AESTables.TE0..TE3. It uses the same int[] w produced by
+ * KeyExpansion.expandKey, and it prints nothing: use AESCore through
+ * AES_128 for the step-by-step trace.
+ *
+ * Decryption is the Equivalent Inverse Cipher: it takes the schedule from
+ * KeyExpansion.expandDecryptionKey and the inverse tables TD0..TD3, so it
+ * costs the same as encryption.
+ */
+public class AESFastEngine {
+
+    /*
+     * encryptBlock:
+     * Encrypts the 16 bytes at in[inOff] into out[outOff] with the schedule w.
+     * The whole block is read before anything is written, so in and out may overlap.
+     */
+    public static void encryptBlock(int[] w, byte[] in, int inOff, byte[] out, int outOff) {
+        final int[] te0 = AESTables.TE0, te1 = AESTables.TE1, te2 = AESTables.TE2, te3 = AESTables.TE3;
+
+        // Initial key addition
+        int s0 = AES_Utils.loadWord(in, inOff) ^ w[0];
+        int s1 = AES_Utils.loadWord(in, inOff + 4) ^ w[1];
+        int s2 = AES_Utils.loadWord(in, inOff + 8) ^ w[2];
+        int s3 = AES_Utils.loadWord(in, inOff + 12) ^ w[3];
+
+        // Rounds 1..9: column c takes row r from column (c + r) % 4 (ShiftRows)
+        int k = 4;
+        for (int round = 1; round < AES_Constants.ROUNDS; round++) {
+            int t0 = te0[s0 >>> 24] ^ te1[(s1 >>> 16) & 0xFF] ^ te2[(s2 >>> 8) & 0xFF] ^ te3[s3 & 0xFF] ^ w[k];
+            int t1 = te0[s1 >>> 24] ^ te1[(s2 >>> 16) & 0xFF] ^ te2[(s3 >>> 8) & 0xFF] ^ te3[s0 & 0xFF] ^ w[k + 1];
+            int t2 = te0[s2 >>> 24] ^ te1[(s3 >>> 16) & 0xFF] ^ te2[(s0 >>> 8) & 0xFF] ^ te3[s1 & 0xFF] ^ w[k + 2];
+            int t3 = te0[s3 >>> 24] ^ te1[(s0 >>> 16) & 0xFF] ^ te2[(s1 >>> 8) & 0xFF] ^ te3[s2 & 0xFF] ^ w[k + 3];
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
+            k += 4;
+        }
+
+        // Final round (no MixColumns): plain S-Box lookups
+        AES_Utils.storeWord(finalColumn(s0, s1, s2, s3) ^ w[k], out, outOff);
+        AES_Utils.storeWord(finalColumn(s1, s2, s3, s0) ^ w[k + 1], out, outOff + 4);
+        AES_Utils.storeWord(finalColumn(s2, s3, s0, s1) ^ w[k + 2], out, outOff + 8);
+        AES_Utils.storeWord(finalColumn(s3, s0, s1, s2) ^ w[k + 3], out, outOff + 12);
+    }
+
+    /** Blocks processed together by encryptBlocks/decryptBlocks. */
+    public static final int INTERLEAVE = 8;
+
+    // group state for the public encryptBlocks/decryptBlocks, whose callers pass none
+    private static final ThreadLocal<int[]> STATE = ThreadLocal.withInitial(() -> new int[INTERLEAVE * 4]);
+
+    /*
+     * encryptBlocks:
+     * Encrypts nBlocks consecutive blocks (ECB), INTERLEAVE at a time. Each round
+     * is applied to all blocks of the group before moving to the next round key,
+     * so the table lookups of independent blocks sit next to each other in one
+     * loop over the schedule and can overlap. The group state lives in a small
+     * int[] (4 words per block) instead of locals, which keeps register
+     * pressure at the single-block level. In-place safe.
+     */
+    public static void encryptBlocks(int[] w, byte[] in, int inOff, int nBlocks, byte[] out, int outOff) {
+        encryptBlocks(w, in, inOff, nBlocks, out, outOff, STATE.get());
+    }
+
+    /** encryptBlocks with a caller-owned state array of INTERLEAVE * 4 ints (no allocation). */
+    static void encryptBlocks(int[] w, byte[] in, int inOff, int nBlocks, byte[] out, int outOff, int[] st) {
+        for (int i = 0; i < nBlocks; i += INTERLEAVE) {
+            int words = Math.min(INTERLEAVE, nBlocks - i) * 4;
+            loadWords(in, inOff + i * 16, st, words);
+            encryptWords(w, st, words);
+            storeWords(st, words, out, outOff + i * 16);
+        }
+    }
+
+    /*
+     * encryptWords:
+     * The interleaved kernel itself: encrypts the words / 4 blocks held as
+     * column words in st[0..words) in place (words <= INTERLEAVE * 4). Callers
+     * fill st from whatever memory holds the data (byte[], ByteBuffer,
+     * MemorySegment) and store the result back the same way.
+     */
+    static void encryptWords(int[] w, int[] st, int words) {
+        encryptWords(w, 0, st, words);
+    }
+
+    /*
+     * encryptWordsMultiKey:
+     * The same kernel with block j / 4 of st encrypted under its own
+     * schedule, the TOTAL_WORDS words at schedules[(j / 4) * TOTAL_WORDS],
+     * for schedulers that gather blocks of streams with different keys.
+     */
+    static void encryptWordsMultiKey(int[] schedules, int[] st, int words) {
+        encryptWords(schedules, AES_Constants.TOTAL_WORDS, st, words);
+    }
+
+    /*
+     * encryptWords (strided):
+     * Block j / 4 uses the schedule at schedules[(j / 4) * stride]: stride 0
+     * is one key for every block, stride TOTAL_WORDS one key per block. One
+     * flat array keeps the per-block round key reads as cheap as they can be.
+     */
+    private static void encryptWords(int[] schedules, int stride, int[] st, int words) {
+        final int[] te0 = AESTables.TE0, te1 = AESTables.TE1, te2 = AESTables.TE2, te3 = AESTables.TE3;
+        final int last = AES_Constants.TOTAL_WORDS - 4;
+
+        for (int j = 0, w = 0; j < words; j += 4, w += stride) {
+            st[j] ^= schedules[w];
+            st[j + 1] ^= schedules[w + 1];
+            st[j + 2] ^= schedules[w + 2];
+            st[j + 3] ^= schedules[w + 3];
+        }
+
+        for (int k = 4; k < last; k += 4) {
+            for (int j = 0, w = k; j < words; j += 4, w += stride) {
+                int s0 = st[j], s1 = st[j + 1], s2 = st[j + 2], s3 = st[j + 3];
+                st[j] = te0[s0 >>> 24] ^ te1[(s1 >>> 16) & 0xFF] ^ te2[(s2 >>> 8) & 0xFF] ^ te3[s3 & 0xFF] ^ schedules[w];
+                st[j + 1] = te0[s1 >>> 24] ^ te1[(s2 >>> 16) & 0xFF] ^ te2[(s3 >>> 8) & 0xFF] ^ te3[s0 & 0xFF] ^ schedules[w + 1];
+                st[j + 2] = te0[s2 >>> 24] ^ te1[(s3 >>> 16) & 0xFF] ^ te2[(s0 >>> 8) & 0xFF] ^ te3[s1 & 0xFF] ^ schedules[w + 2];
+                st[j + 3] = te0[s3 >>> 24] ^ te1[(s0 >>> 16) & 0xFF] ^ te2[(s1 >>> 8) & 0xFF] ^ te3[s2 & 0xFF] ^ schedules[w + 3];
+            }
+        }
+
+        for (int j = 0, w = last; j < words; j += 4, w += stride) {
+            int s0 = st[j], s1 = st[j + 1], s2 = st[j + 2], s3 = st[j + 3];
+            st[j] = finalColumn(s0, s1, s2, s3) ^ schedules[w];
+            st[j + 1] = finalColumn(s1, s2, s3, s0) ^ schedules[w + 1];
+            st[j + 2] = finalColumn(s2, s3, s0, s1) ^ schedules[w + 2];
+            st[j + 3] = finalColumn(s3, s0, s1, s2) ^ schedules[w + 3];
+        }
+    }
+
+    /*
+     * decryptBlocks:
+     * Inverse of encryptBlocks with the Equivalent Inverse Cipher schedule dk,
+     * interleaving INTERLEAVE blocks per round loop. In-place safe.
+     */
+    public static void decryptBlocks(int[] dk, byte[] in, int inOff, int nBlocks, byte[] out, int outOff) {
+        decryptBlocks(dk, in, inOff, nBlocks, out, outOff, STATE.get());
+    }
+
+    /** decryptBlocks with a caller-owned state array of INTERLEAVE * 4 ints (no allocation). */
+    static void decryptBlocks(int[] dk, byte[] in, int inOff, int nBlocks, byte[] out, int outOff, int[] st) {
+        for (int i = 0; i < nBlocks; i += INTERLEAVE) {
+            int words = Math.min(INTERLEAVE, nBlocks - i) * 4;
+            loadWords(in, inOff + i * 16, st, words);
+            decryptWords(dk, st, words);
+            storeWords(st, words, out, outOff + i * 16);
+        }
+    }
+
+    /** Decrypting counterpart of encryptWords, with the schedule dk. */
+    static void decryptWords(int[] dk, int[] st, int words) {
+        final int[] td0 = AESTables.TD0, td1 = AESTables.TD1, td2 = AESTables.TD2, td3 = AESTables.TD3;
+
+        for (int j = 0; j < words; j += 4) {
+            st[j] ^= dk[0];
+            st[j + 1] ^= dk[1];
+            st[j + 2] ^= dk[2];
+            st[j + 3] ^= dk[3];
+        }
+
+        int k = 4;
+        for (int round = 1; round < AES_Constants.ROUNDS; round++) {
+            int rk0 = dk[k], rk1 = dk[k + 1], rk2 = dk[k + 2], rk3 = dk[k + 3];
+            for (int j = 0; j < words; j += 4) {
+                int s0 = st[j], s1 = st[j + 1], s2 = st[j + 2], s3 = st[j + 3];
+                st[j] = td0[s0 >>> 24] ^ td1[(s3 >>> 16) & 0xFF] ^ td2[(s2 >>> 8) & 0xFF] ^ td3[s1 & 0xFF] ^ rk0;
+                st[j + 1] = td0[s1 >>> 24] ^ td1[(s0 >>> 16) & 0xFF] ^ td2[(s3 >>> 8) & 0xFF] ^ td3[s2 & 0xFF] ^ rk1;
+                st[j + 2] = td0[s2 >>> 24] ^ td1[(s1 >>> 16) & 0xFF] ^ td2[(s0 >>> 8) & 0xFF] ^ td3[s3 & 0xFF] ^ rk2;
+                st[j + 3] = td0[s3 >>> 24] ^ td1[(s2 >>> 16) & 0xFF] ^ td2[(s1 >>> 8) & 0xFF] ^ td3[s0 & 0xFF] ^ rk3;
+            }
+            k += 4;
+        }
+
+        for (int j = 0; j < words; j += 4) {
+            int s0 = st[j], s1 = st[j + 1], s2 = st[j + 2], s3 = st[j + 3];
+            st[j] = invFinalColumn(s0, s3, s2, s1) ^ dk[k];
+            st[j + 1] = invFinalColumn(s1, s0, s3, s2) ^ dk[k + 1];
+            st[j + 2] = invFinalColumn(s2, s1, s0, s3) ^ dk[k + 2];
+            st[j + 3] = invFinalColumn(s3, s2, s1, s0) ^ dk[k + 3];
+        }
+    }
+
+    private static void loadWords(byte[] in, int off, int[] st, int words) {
+        for (int j = 0; j < words; j++) {
+            st[j] = AES_Utils.loadWord(in, off + j * 4);
+        }
+    }
+
+    private static void storeWords(int[] st, int words, byte[] out, int off) {
+        for (int j = 0; j < words; j++) {
+            AES_Utils.storeWord(st[j], out, off + j * 4);
+        }
+    }
+
+    /*
+     * decryptBlock:
+     * Decrypts the 16 bytes at in[inOff] into out[outOff] with the decryption
+     * schedule dk (see KeyExpansion.expandDecryptionKey). In-place safe.
+     */
+    public static void decryptBlock(int[] dk, byte[] in, int inOff, byte[] out, int outOff) {
+        final int[] td0 = AESTables.TD0, td1 = AESTables.TD1, td2 = AESTables.TD2, td3 = AESTables.TD3;
+
+        int s0 = AES_Utils.loadWord(in, inOff) ^ dk[0];
+        int s1 = AES_Utils.loadWord(in, inOff + 4) ^ dk[1];
+        int s2 = AES_Utils.loadWord(in, inOff + 8) ^ dk[2];
+        int s3 = AES_Utils.loadWord(in, inOff + 12) ^ dk[3];
+
+        // Rounds 1..9: column c takes row r from column (c - r) % 4 (InvShiftRows)
+        int k = 4;
+        for (int round = 1; round < AES_Constants.ROUNDS; round++) {
+            int t0 = td0[s0 >>> 24] ^ td1[(s3 >>> 16) & 0xFF] ^ td2[(s2 >>> 8) & 0xFF] ^ td3[s1 & 0xFF] ^ dk[k];
+            int t1 = td0[s1 >>> 24] ^ td1[(s0 >>> 16) & 0xFF] ^ td2[(s3 >>> 8) & 0xFF] ^ td3[s2 & 0xFF] ^ dk[k + 1];
+            int t2 = td0[s2 >>> 24] ^ td1[(s1 >>> 16) & 0xFF] ^ td2[(s0 >>> 8) & 0xFF] ^ td3[s3 & 0xFF] ^ dk[k + 2];
+            int t3 = td0[s3 >>> 24] ^ td1[(s2 >>> 16) & 0xFF] ^ td2[(s1 >>> 8) & 0xFF] ^ td3[s0 & 0xFF] ^ dk[k + 3];
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
+            k += 4;
+        }
+
+        // Final round (no InvMixColumns): plain Inverse S-Box lookups
+        AES_Utils.storeWord(invFinalColumn(s0, s3, s2, s1) ^ dk[k], out, outOff);
+        AES_Utils.storeWord(invFinalColumn(s1, s0, s3, s2) ^ dk[k + 1], out, outOff + 4);
+        AES_Utils.storeWord(invFinalColumn(s2, s1, s0, s3) ^ dk[k + 2], out, outOff + 8);
+        AES_Utils.storeWord(invFinalColumn(s3, s2, s1, s0) ^ dk[k + 3], out, outOff + 12);
+    }
+
+    /** SubBytes+ShiftRows for one output column: row r comes from the r-th argument. */
+    private static int finalColumn(int a, int b, int c, int d) {
+        final byte[] s = AESTables.SBOX;
+        return ((s[a >>> 24] & 0xFF) << 24) |
+                ((s[(b >>> 16) & 0xFF] & 0xFF) << 16) |
+                ((s[(c >>> 8) & 0xFF] & 0xFF) << 8) |
+                (s[d & 0xFF] & 0xFF);
+    }
+
+    /** InvSubBytes+InvShiftRows for one output column: row r comes from the r-th argument. */
+    private static int invFinalColumn(int a, int b, int c, int d) {
+        final byte[] s = AESTables.INV_SBOX;
+        return ((s[a >>> 24] & 0xFF) << 24) |
+                ((s[(b >>> 16) & 0xFF] & 0xFF) << 16) |
+                ((s[(c >>> 8) & 0xFF] & 0xFF) << 8) |
+                (s[d & 0xFF] & 0xFF);
+    }
+}
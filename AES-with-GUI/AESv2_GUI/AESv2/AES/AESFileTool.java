@@ -0,0 +1,153 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * AESFileTool.java
+ * Non-interactive file encryption with AES-128-CTR over memory-mapped files.
+ *
+ * Usage:
+ *   java AESFileTool encrypt <key-source> <input> <output> [threads]
+ *   java AESFileTool decrypt <key-source> <input> <output> [threads]
+ * where <key-source> is env:NAME, file:PATH or - (standard input); see
+ * AES_Utils.readKey. The key itself is never taken from the command line.
+ *
+ * File format: a 16-byte random IV followed by the CTR ciphertext (same
+ * length as the plaintext). CTR gives confidentiality only; there is no
+ * integrity check.
+ *
+ * Input and output are mapped in windows of WINDOW bytes; each window is a
+ * task on a ForkJoinPool that XORs the mapped input into the mapped output
+ * through AES_CTR.crypt(offset, ByteBuffer, ByteBuffer). No file data is
+ * copied into a byte[]. At most 'threads' windows are being processed at a
+ * time, but a MappedByteBuffer is only unmapped when the garbage collector
+ * frees it, so finished windows may stay mapped (address space, not heap)
+ * until then; only the output windows are forced to disk right away.
+ */
+public class AESFileTool {
+
+    public static final int HEADER_SIZE = AES_Constants.BLOCK_SIZE;
+    static final int WINDOW = 64 << 20; // multiple of the block size
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4 || !(args[0].equals("encrypt") || args[0].equals("decrypt"))) {
+            System.out.println("Usage: java AESFileTool encrypt|decrypt env:NAME|file:PATH|- <input> <output> [threads]");
+            System.exit(2);
+        }
+        byte[] key = AES_Utils.readKey(args[1], 16);
+        Path input = Paths.get(args[2]);
+        Path output = Paths.get(args[3]);
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        AESCipher cipher = new AESCipher(key);
+        Arrays.fill(key, (byte) 0);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        long bytes;
+        try {
+            bytes = args[0].equals("encrypt")
+                    ? encryptFile(cipher, input, output, pool)
+                    : decryptFile(cipher, input, output, pool);
+        } finally {
+            pool.shutdown();
+            cipher.destroy();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %d bytes in %.2f s (%.1f MB/s, %d threads)%n",
+                args[0], bytes, seconds, bytes / seconds / (1 << 20), threads);
+    }
+
+    /** Writes IV || CTR(plaintext) to output; returns the number of plaintext bytes. */
+    public static long encryptFile(AESCipher cipher, Path input, Path output, ForkJoinPool pool) throws IOException {
+        byte[] iv = new byte[AES_Constants.BLOCK_SIZE];
+        new SecureRandom().nextBytes(iv);
+        try (FileChannel src = FileChannel.open(input, StandardOpenOption.READ)) {
+            AES_Utils.requireDistinct(input, output);
+            try (FileChannel dst = openOutput(output)) {
+                long length = src.size();
+                sizeOutput(dst, HEADER_SIZE + length);
+                dst.write(ByteBuffer.wrap(iv), 0);
+                process(new AES_CTR(cipher, iv), src, 0, dst, HEADER_SIZE, length, pool);
+                return length;
+            }
+        }
+    }
+
+    /*
+     * decryptFile:
+     * Reads IV || ciphertext from input and writes the plaintext; returns its
+     * length. The input is checked and its header read before the output is
+     * opened, so a bad input leaves an existing output file untouched.
+     */
+    public static long decryptFile(AESCipher cipher, Path input, Path output, ForkJoinPool pool) throws IOException {
+        try (FileChannel src = FileChannel.open(input, StandardOpenOption.READ)) {
+            AES_Utils.requireDistinct(input, output);
+            if (src.size() < HEADER_SIZE) {
+                throw new IllegalArgumentException("Input is too short to hold the " + HEADER_SIZE + "-byte IV header.");
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (src.read(header, header.position()) < 0) {
+                    throw new IOException("Unexpected end of file in IV header.");
+                }
+            }
+            long length = src.size() - HEADER_SIZE;
+            try (FileChannel dst = openOutput(output)) {
+                sizeOutput(dst, length);
+                process(new AES_CTR(cipher, header.array()), src, HEADER_SIZE, dst, 0, length, pool);
+                return length;
+            }
+        }
+    }
+
+    /*
+     * process:
+     * CTR-transforms 'length' bytes from src at srcStart into dst at dstStart,
+     * one mapped window per task. The stream offset of a window is its offset
+     * within the data, so the windows are independent.
+     */
+    static void process(AES_CTR ctr, FileChannel src, long srcStart, FileChannel dst, long dstStart,
+                        long length, ForkJoinPool pool) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (long off = 0; off < length; off += WINDOW) {
+            final long offset = off;
+            final int n = (int) Math.min(WINDOW, length - off);
+            tasks.add(pool.submit(() -> {
+                try {
+                    MappedByteBuffer in = src.map(FileChannel.MapMode.READ_ONLY, srcStart + offset, n);
+                    MappedByteBuffer out = dst.map(FileChannel.MapMode.READ_WRITE, dstStart + offset, n);
+                    ctr.crypt(offset, in, out);
+                    out.force();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+
+    private static FileChannel openOutput(Path output) throws IOException {
+        return FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /** Extends the output to its final size up front so the workers only map existing regions. */
+    private static void sizeOutput(FileChannel dst, long size) throws IOException {
+        if (size > 0) {
+            dst.write(ByteBuffer.allocate(1), size - 1);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * AESParallel.java
+ * Fork-join helper that splits a run of blocks into large chunks for the modes
+ * whose blocks are independent (CTR, CBC decryption, ...).
+ *
+ * Chunks are CHUNK_BLOCKS blocks (256 KiB) so each task amortises its
+ * scheduling cost; inputs smaller than two chunks run on the calling thread.
+ */
+final class AESParallel {
+
+    /** Blocks per fork-join leaf task. */
+    static final int CHUNK_BLOCKS = 16 * 1024;
+
+    /** Body run for the half-open block range [from, to). */
+    interface BlockRange {
+        void run(int from, int to);
+    }
+
+    private AESParallel() {
+    }
+
+    /** Runs body over [0, nBlocks) on the pool, in chunks of CHUNK_BLOCKS. */
+    static void forEachChunk(ForkJoinPool pool, int nBlocks, BlockRange body) {
+        forEachChunk(pool, nBlocks, CHUNK_BLOCKS, body);
+    }
+
+    /** Same with a caller-chosen chunk size, for units other than blocks (e.g. XTS sectors). */
+    static void forEachChunk(ForkJoinPool pool, int n, int chunk, BlockRange body) {
+        if (n < 2 * chunk) {
+            body.run(0, n);
+            return;
+        }
+        pool.invoke(new ChunkTask(0, n, chunk, body));
+    }
+
+    private static final class ChunkTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final int chunk;
+        private final BlockRange body;
+
+        ChunkTask(int from, int to, int chunk, BlockRange body) {
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunk) {
+                body.run(from, to);
+                return;
+            }
+            // split on a chunk boundary so every leaf but the last is a full chunk
+            int chunks = (to - from + chunk - 1) / chunk;
+            int mid = from + (chunks / 2) * chunk;
+            invokeAll(new ChunkTask(from, mid, chunk, body), new ChunkTask(mid, to, chunk, body));
+        }
+    }
+}
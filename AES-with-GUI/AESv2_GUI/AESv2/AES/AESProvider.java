@@ -0,0 +1,60 @@
+import java.security.Provider;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * AESProvider.java
+ * java.security.Provider exposing this project's engines through javax.crypto.Cipher.
+ *
+ *   Cipher.AES -> AESCipherSpi (ECB, CBC, CTR, GCM; NoPadding, PKCS5Padding)
+ *   SecureRandom.AES-CTR-DRBG -> AESDRBGSpi (per-thread AES_CTRDRBG, no lock)
+ *   Cipher.DES -> DESCipherSpi (ECB, CBC; NoPadding, PKCS5Padding), registered
+ *                 only when the DES project's classes are on the classpath
+ *
+ * Existing code keeps calling Cipher.getInstance(transformation) and picks
+ * the engine by provider:
+ *   Security.insertProviderAt(new AESProvider(), 1);      // prefer ours everywhere
+ *   Cipher.getInstance("AES/CTR/NoPadding", "AESv2");     // or ask for it by name
+ * OpenJDK accepts unsigned providers; Oracle JDK builds require a signed JAR
+ * for Cipher implementations.
+ */
+public class AESProvider extends Provider {
+
+    public static final String NAME = "AESv2";
+
+    public AESProvider() {
+        super(NAME, "1.0", "AES-128 (T-table engine) and DES from the AESv2 project");
+
+        Map<String, String> aes = new HashMap<>();
+        aes.put("SupportedModes", "ECB|CBC|CTR|GCM");
+        aes.put("SupportedPaddings", "NOPADDING|PKCS5PADDING");
+        aes.put("SupportedKeyFormats", "RAW");
+        putService(new Service(this, "Cipher", "AES", "AESCipherSpi", null, aes));
+
+        Map<String, String> drbg = new HashMap<>();
+        drbg.put("ThreadSafe", "true"); // SecureRandom then skips its lock
+        putService(new Service(this, "SecureRandom", "AES-CTR-DRBG", "AESDRBGSpi", null, drbg));
+
+        if (isPresent("DESCipherSpi")) {
+            Map<String, String> des = new HashMap<>();
+            des.put("SupportedModes", "ECB|CBC");
+            des.put("SupportedPaddings", "NOPADDING|PKCS5PADDING");
+            des.put("SupportedKeyFormats", "RAW");
+            putService(new Service(this, "Cipher", "DES", "DESCipherSpi", null, des));
+        }
+    }
+
+    /** True when DES is registered, i.e. DESCipherSpi was found on the classpath. */
+    public boolean hasDes() {
+        return getService("Cipher", "DES") != null;
+    }
+
+    private static boolean isPresent(String className) {
+        try {
+            Class.forName(className, false, AESProvider.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
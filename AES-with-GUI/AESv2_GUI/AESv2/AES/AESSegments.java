@@ -0,0 +1,98 @@
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * AESSegments.java
+ * AES-128 (ECB blocks and CTR) directly on java.lang.foreign.MemorySegment.
+ *
+ * Words are read and written with a big-endian unaligned int layout, which
+ * the JIT turns into a plain load/store plus a byte swap on little-endian
+ * hardware; nothing is copied into heap arrays except the cipher state.
+ * Works for native (off-heap), mapped and heap segments alike.
+ *
+ * MemorySegment is final in JDK 22. On JDK 21 this class needs
+ * --enable-preview (javac --release 21 --enable-preview); it is kept apart
+ * from AESCipher so the rest of the tree compiles without preview features.
+ */
+public final class AESSegments {
+
+    private static final ValueLayout.OfInt WORD =
+            ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private AESSegments() {
+    }
+
+    /** ECB-encrypts src (byteSize a multiple of 16) into dst; src and dst may be the same segment. */
+    public static void encrypt(AESCipher cipher, MemorySegment src, MemorySegment dst) {
+        crypt(cipher.encryptionSchedule(), true, src, dst);
+    }
+
+    /** Inverse of encrypt. */
+    public static void decrypt(AESCipher cipher, MemorySegment src, MemorySegment dst) {
+        crypt(cipher.decryptionSchedule(), false, src, dst);
+    }
+
+    /*
+     * ctr:
+     * XORs src with the AES-CTR keystream of (cipher, iv) starting at byte
+     * 'offset' of the stream, writing to dst. Same output as AES_CTR.crypt.
+     */
+    public static void ctr(AESCipher cipher, byte[] iv, long offset, MemorySegment src, MemorySegment dst) {
+        if (iv == null || iv.length != AES_Constants.BLOCK_SIZE) {
+            throw new IllegalArgumentException("CTR IV must be " + AES_Constants.BLOCK_SIZE + " bytes.");
+        }
+        long len = src.byteSize();
+        checkOutput(len, dst);
+        AES_CTR.CounterKeystream ks = AES_CTR.threadKeystream();
+        ks.start(cipher, iv, false, offset);
+        try {
+            byte[] k = ks.ks;
+            for (long pos = 0; pos < len; ) {
+                int n = ks.next(len - pos), from = ks.from;
+                int j = 0;
+                for (; j + 4 <= n; j += 4) {
+                    dst.set(WORD, pos + j, src.get(WORD, pos + j) ^ AES_Utils.loadWord(k, from + j));
+                }
+                for (; j < n; j++) {
+                    dst.set(ValueLayout.JAVA_BYTE, pos + j, (byte) (src.get(ValueLayout.JAVA_BYTE, pos + j) ^ k[from + j]));
+                }
+                pos += n;
+            }
+        } finally {
+            ks.end();
+        }
+    }
+
+    private static void crypt(int[] schedule, boolean encrypt, MemorySegment src, MemorySegment dst) {
+        long len = src.byteSize();
+        if (len % AES_Constants.BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Length must be a multiple of " + AES_Constants.BLOCK_SIZE + " bytes.");
+        }
+        checkOutput(len, dst);
+        int[] st = new int[AESFastEngine.INTERLEAVE * 4];
+
+        for (long done = 0; done < len; ) {
+            int n = (int) Math.min(AESFastEngine.INTERLEAVE * AES_Constants.BLOCK_SIZE, len - done);
+            int words = n / 4;
+            for (int j = 0; j < words; j++) {
+                st[j] = src.get(WORD, done + j * 4L);
+            }
+            if (encrypt) {
+                AESFastEngine.encryptWords(schedule, st, words);
+            } else {
+                AESFastEngine.decryptWords(schedule, st, words);
+            }
+            for (int j = 0; j < words; j++) {
+                dst.set(WORD, done + j * 4L, st[j]);
+            }
+            done += n;
+        }
+    }
+
+    private static void checkOutput(long len, MemorySegment dst) {
+        if (dst.byteSize() < len) {
+            throw new IllegalArgumentException("Output segment too small: " + dst.byteSize() + " < " + len);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import java.util.Arrays;
+
+/**
+ * AESStreamCipher.java
+ * Incremental AES-128 encryption/decryption with update()/doFinal().
+ *
+ * Input may arrive in pieces of any size; a partial block is buffered
+ * internally (at most 16 bytes), so memory use does not depend on the
+ * message length. ECB and CBC use standard PKCS#7 padding by default
+ * (1..16 bytes, each equal to the pad length) instead of the '#' padding of
+ * AES_128. CTR needs no padding.
+ *
+ * When decrypting with padding, the last full block is held back until
+ * doFinal(), because only then is it known to carry the padding. After
+ * doFinal() the object starts over with the IV it was created with; use
+ * reset(iv) to start the next message with a fresh IV.
+ *
+ * in and out may be the same array with any offsets. Buffered bytes make
+ * the output run ahead of the input by up to 16 bytes, so when the output
+ * could overwrite input not read yet (for example update(buf, off, len,
+ * buf, off) after a partial block), the input is copied first, as SunJCE
+ * does.
+ */
+public class AESStreamCipher {
+
+    public enum Mode { ECB, CBC, CTR }
+
+    private final Mode mode;
+    private final boolean encrypt;
+    private final boolean padding;
+    private final AESCipher cipher;
+
+    private byte[] iv;
+    private AES_CBC cbc;
+    private AES_CTR ctr;
+
+    private final byte[] buffer = new byte[AES_Constants.BLOCK_SIZE];
+    private int bufLen;
+
+    /** ECB and CBC with PKCS#7 padding, CTR without; iv is ignored for ECB. */
+    public AESStreamCipher(Mode mode, boolean encrypt, AESCipher cipher, byte[] iv) {
+        this(mode, encrypt, cipher, iv, mode != Mode.CTR);
+    }
+
+    public AESStreamCipher(Mode mode, boolean encrypt, AESCipher cipher, byte[] iv, boolean padding) {
+        if (padding && mode == Mode.CTR) {
+            throw new IllegalArgumentException("CTR mode does not use padding.");
+        }
+        this.mode = mode;
+        this.encrypt = encrypt;
+        this.padding = padding;
+        this.cipher = cipher;
+        reset(iv);
+    }
+
+    /** Drops any buffered input and starts a new message with the given IV. */
+    public void reset(byte[] iv) {
+        if (mode != Mode.ECB && (iv == null || iv.length != AES_Constants.BLOCK_SIZE)) {
+            throw new IllegalArgumentException(mode + " IV must be " + AES_Constants.BLOCK_SIZE + " bytes.");
+        }
+        this.iv = mode == Mode.ECB ? null : iv.clone();
+        if (mode == Mode.CBC) {
+            cbc = new AES_CBC(cipher, this.iv);
+        } else if (mode == Mode.CTR) {
+            ctr = new AES_CTR(cipher, this.iv);
+        }
+        bufLen = 0;
+        Arrays.fill(buffer, (byte) 0);
+    }
+
+    /** Largest number of bytes the next update(len) or doFinal() after it can produce. */
+    public int getOutputSize(int len) {
+        int total = bufLen + len;
+        if (mode == Mode.CTR) return len;
+        if (encrypt && padding) return (total / AES_Constants.BLOCK_SIZE + 1) * AES_Constants.BLOCK_SIZE;
+        return total;
+    }
+
+    /*
+     * update:
+     * Processes len bytes of input and writes every block that is complete
+     * into out[outOff..]. Returns the number of bytes written, which may be
+     * less than len (input kept in the buffer) or more (buffer flushed).
+     */
+    public int update(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        if (in == out && outOff + bufLen > inOff && outOff < inOff + len) {
+            // output byte i is written before input byte i + bufLen - (outOff - inOff) is read
+            in = Arrays.copyOfRange(in, inOff, inOff + len);
+            inOff = 0;
+        }
+        if (mode == Mode.CTR) {
+            ctr.update(in, inOff, len, out, outOff);
+            return len;
+        }
+        // padded decryption keeps the final full block for doFinal()
+        boolean holdBack = padding && !encrypt;
+        int written = 0;
+
+        if (bufLen > 0) {
+            int n = Math.min(AES_Constants.BLOCK_SIZE - bufLen, len);
+            System.arraycopy(in, inOff, buffer, bufLen, n);
+            bufLen += n;
+            inOff += n;
+            len -= n;
+            if (bufLen < AES_Constants.BLOCK_SIZE || (holdBack && len == 0)) {
+                return 0;
+            }
+            processBlocks(buffer, 0, AES_Constants.BLOCK_SIZE, out, outOff);
+            outOff += AES_Constants.BLOCK_SIZE;
+            written = AES_Constants.BLOCK_SIZE;
+            bufLen = 0;
+        }
+
+        int whole = len & ~(AES_Constants.BLOCK_SIZE - 1);
+        if (holdBack && len > 0 && whole == len) {
+            whole -= AES_Constants.BLOCK_SIZE;
+        }
+        if (whole > 0) {
+            processBlocks(in, inOff, whole, out, outOff);
+            inOff += whole;
+            len -= whole;
+            written += whole;
+        }
+        System.arraycopy(in, inOff, buffer, 0, len);
+        bufLen = len;
+        return written;
+    }
+
+    /*
+     * doFinal:
+     * Flushes the buffer: adds the padding when encrypting, checks and strips
+     * it when decrypting. Returns the number of bytes written to out.
+     * Throws IllegalBlockSizeException when an unpadded block mode (or a
+     * padded decryption) ends on a partial block, and BadPaddingException
+     * when the PKCS#7 padding of the last block is malformed.
+     */
+    public int doFinal(byte[] out, int outOff) throws IllegalBlockSizeException, BadPaddingException {
+        try {
+            if (mode == Mode.CTR) {
+                return 0;
+            }
+            if (encrypt && padding) {
+                int pad = AES_Constants.BLOCK_SIZE - bufLen;
+                Arrays.fill(buffer, bufLen, AES_Constants.BLOCK_SIZE, (byte) pad);
+                processBlocks(buffer, 0, AES_Constants.BLOCK_SIZE, out, outOff);
+                return AES_Constants.BLOCK_SIZE;
+            }
+            if (!padding) {
+                if (bufLen != 0) {
+                    throw new IllegalBlockSizeException("Input length is not a multiple of " + AES_Constants.BLOCK_SIZE + " bytes.");
+                }
+                return 0;
+            }
+            if (bufLen != AES_Constants.BLOCK_SIZE) {
+                throw new IllegalBlockSizeException("Padded ciphertext must be a non-empty multiple of " + AES_Constants.BLOCK_SIZE + " bytes.");
+            }
+            byte[] last = new byte[AES_Constants.BLOCK_SIZE];
+            processBlocks(buffer, 0, AES_Constants.BLOCK_SIZE, last, 0);
+            int pad = checkPadding(last);
+            int n = AES_Constants.BLOCK_SIZE - pad;
+            System.arraycopy(last, 0, out, outOff, n);
+            Arrays.fill(last, (byte) 0);
+            return n;
+        } finally {
+            reset(iv);
+        }
+    }
+
+    /** Returns the PKCS#7 pad length of block, checking every pad byte without an early exit. */
+    private static int checkPadding(byte[] block) throws BadPaddingException {
+        int pad = block[AES_Constants.BLOCK_SIZE - 1] & 0xFF;
+        int bad = (pad == 0 || pad > AES_Constants.BLOCK_SIZE) ? 1 : 0;
+        for (int i = 0; i < AES_Constants.BLOCK_SIZE; i++) {
+            // bytes inside the pad region must all equal pad
+            int inPad = (i >= AES_Constants.BLOCK_SIZE - pad) ? 1 : 0;
+            bad |= inPad & ((block[i] & 0xFF) != pad ? 1 : 0);
+        }
+        if (bad != 0) {
+            throw new BadPaddingException("Invalid PKCS#7 padding.");
+        }
+        return pad;
+    }
+
+    private void processBlocks(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        if (mode == Mode.ECB) {
+            if (encrypt) {
+                cipher.encryptBlocks(in, inOff, len / AES_Constants.BLOCK_SIZE, out, outOff);
+            } else {
+                cipher.decryptBlocks(in, inOff, len / AES_Constants.BLOCK_SIZE, out, outOff);
+            }
+        } else if (encrypt) {
+            cbc.encrypt(in, inOff, len, out, outOff);
+        } else {
+            cbc.decrypt(in, inOff, len, out, outOff);
+        }
+    }
+}
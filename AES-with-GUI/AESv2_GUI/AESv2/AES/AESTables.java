@@ -0,0 +1,63 @@
+/**
+ * AESTables.java
+ * Precomputed 32-bit lookup tables (T-tables) for the word-oriented AES engine.
+ *
+ * Each entry of TE0 is the MixColumns column produced by a single S-Box output
+ * in row 0: {02*s, 01*s, 01*s, 03*s} packed MSB first, the same byte order used
+ * by KeyExpansion words. TE1..TE3 are the same column rotated for rows 1..3,
+ * so one round of SubBytes+ShiftRows+MixColumns is four lookups and XORs per column.
+ *
+ * TD0..TD3 are the inverse tables for the Equivalent Inverse Cipher: an
+ * Inverse S-Box output s in row 0 becomes {0e*s, 09*s, 0d*s, 0b*s}.
+ *
+ * Everything is generated from GaloisField when the class is initialized.
+ * SBOX and INV_SBOX are byte[] copies of the S-Boxes for the final rounds,
+ * 256 bytes (four cache lines) each instead of a 1 KiB int[].
+ */
+public class AESTables {
+
+    public static final int[] TE0 = new int[256];
+    public static final int[] TE1 = new int[256];
+    public static final int[] TE2 = new int[256];
+    public static final int[] TE3 = new int[256];
+
+    public static final int[] TD0 = new int[256];
+    public static final int[] TD1 = new int[256];
+    public static final int[] TD2 = new int[256];
+    public static final int[] TD3 = new int[256];
+
+    public static final byte[] SBOX = GaloisField.sBoxTable();
+    public static final byte[] INV_SBOX = GaloisField.invSBoxTable();
+
+    static {
+        for (int x = 0; x < 256; x++) {
+            int s = SBOX[x] & 0xFF;
+            int t = (GaloisField.gMul(s, 2) << 24) | (s << 16) | (s << 8) | GaloisField.gMul(s, 3);
+            TE0[x] = t;
+            TE1[x] = Integer.rotateRight(t, 8);
+            TE2[x] = Integer.rotateRight(t, 16);
+            TE3[x] = Integer.rotateRight(t, 24);
+
+            int si = INV_SBOX[x] & 0xFF;
+            int d = (GaloisField.gMul(si, 0x0e) << 24) | (GaloisField.gMul(si, 0x09) << 16)
+                    | (GaloisField.gMul(si, 0x0d) << 8) | GaloisField.gMul(si, 0x0b);
+            TD0[x] = d;
+            TD1[x] = Integer.rotateRight(d, 8);
+            TD2[x] = Integer.rotateRight(d, 16);
+            TD3[x] = Integer.rotateRight(d, 24);
+        }
+    }
+
+    /*
+     * invMixColumn:
+     * Applies InvMixColumns to a single key word. TD0[S[b]] is the InvMixColumns
+     * contribution of byte b, because the Inverse S-Box undoes the S-Box.
+     */
+    public static int invMixColumn(int word) {
+        final byte[] s = SBOX;
+        return TD0[s[word >>> 24] & 0xFF] ^
+                TD1[s[(word >>> 16) & 0xFF] & 0xFF] ^
+                TD2[s[(word >>> 8) & 0xFF] & 0xFF] ^
+                TD3[s[word & 0xFF] & 0xFF];
+    }
+}
@@ -3,7 +3,31 @@ import java.util.Scanner;
 
 public class AES_128 {
 
+    /*
+     * Engine:
+     * REFERENCE runs the step-by-step byte[4][4] path in AESCore and prints every
+     * intermediate state (teaching / trace output).
+     * T_TABLE runs AESFastEngine: 32-bit columns and fused round tables, no output.
+     */
+    public enum Engine { REFERENCE, T_TABLE }
+
+    private static Engine engine = Engine.REFERENCE;
+
+    public static void setEngine(Engine e) {
+        engine = e;
+    }
+
+    public static Engine getEngine() {
+        return engine;
+    }
+
     public static byte[] encryptBlock(byte[] block, int[] w) {
+        if (engine == Engine.T_TABLE) {
+            byte[] out = new byte[AES_Constants.BLOCK_SIZE];
+            AESFastEngine.encryptBlock(w, block, 0, out, 0);
+            return out;
+        }
+
         byte[][] state = AES_Utils.bytesToState(block);
         AESLogger.section("Initial Key Addition");
         AESCore.addRoundKey(state, w, 0);
@@ -25,6 +49,14 @@ public class AES_128 {
     }
 
     public static byte[] decryptBlock(byte[] block, int[] w) {
+        if (engine == Engine.T_TABLE) {
+            // derives the Equivalent Inverse Cipher schedule per call; use an
+            // AESCipher context when decrypting in bulk
+            byte[] out = new byte[AES_Constants.BLOCK_SIZE];
+            AESFastEngine.decryptBlock(KeyExpansion.expandDecryptionKey(w), block, 0, out, 0);
+            return out;
+        }
+
         byte[][] state = AES_Utils.bytesToState(block);
         AESLogger.section("Decryption Phase Start");
         AESLogger.section("Initial AddRoundKey (Final Key)");
@@ -70,6 +102,12 @@ public class AES_128 {
     }
 
     public static void main(String[] args) {
+        // "--fast" selects the T-table engine and skips the per-step trace
+        if (args.length > 0 && args[0].equals("--fast")) {
+            setEngine(Engine.T_TABLE);
+        }
+        boolean trace = engine == Engine.REFERENCE;
+
         Scanner scanner = new Scanner(System.in);
 
         System.out.println("=================================================");
@@ -93,7 +131,9 @@ public class AES_128 {
             }
         }
 ///////////////////////////////////////////////////////////////////////////////////////////
-        int[] expandedKey = KeyExpansion.expandKey(keyBytes);
+        // the fast engine reuses cached schedules instead of expanding (and printing) per run
+        AESCipher cipher = trace ? null : KeyScheduleCache.SHARED.get(keyBytes);
+        int[] expandedKey = trace ? KeyExpansion.expandKey(keyBytes) : null;
 
         System.out.println("\n\n#################################################");
         System.out.println("                 ENCRYPTION START");
@@ -107,7 +147,13 @@ public class AES_128 {
             System.out.printf("=================================================\n");
 
             AESLogger.setContext("ENC", i + 1);
-            byte[] encryptedBlock = encryptBlock(blocks[i], expandedKey);
+            byte[] encryptedBlock;
+            if (cipher != null) {
+                encryptedBlock = new byte[AES_Constants.BLOCK_SIZE];
+                cipher.encryptBlock(blocks[i], 0, encryptedBlock, 0);
+            } else {
+                encryptedBlock = encryptBlock(blocks[i], expandedKey);
+            }
             System.arraycopy(encryptedBlock, 0, cipherBytes, i * 16, 16);
 
             String cipherHexBlock = AES_Utils.bytesToHex(encryptedBlock);
@@ -139,13 +185,22 @@ public class AES_128 {
 
             AESLogger.setContext("DEC", i + 1);
             byte[] encryptedBlock = Arrays.copyOfRange(cipherBytes, i * 16, (i + 1) * 16);
-            byte[] decryptedBlock = decryptBlock(encryptedBlock, expandedKey);
+            byte[] decryptedBlock;
+            if (cipher != null) {
+                decryptedBlock = new byte[AES_Constants.BLOCK_SIZE];
+                cipher.decryptBlock(encryptedBlock, 0, decryptedBlock, 0);
+            } else {
+                decryptedBlock = decryptBlock(encryptedBlock, expandedKey);
+            }
             System.arraycopy(decryptedBlock, 0, decryptedPaddedBytes, i * 16, 16);
 
             System.out.println("Decrypted Block " + (i + 1) + " (Hex): " + AES_Utils.bytesToHex(decryptedBlock));
             System.out.println("Decrypted Block " + (i + 1) + " (Chars): " + new String(decryptedBlock));
             AESLogger.clearContext();
         }
+        if (cipher != null) {
+            cipher.destroy(); // our copy of the cached schedules
+        }
 
         StringBuilder recovered = new StringBuilder();
         for (byte b : decryptedPaddedBytes) {
@@ -0,0 +1,126 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * AES_CBC.java
+ * Cipher Block Chaining (CBC) mode on top of the fast AES-128 engine (NIST SP 800-38A 6.2).
+ *
+ * Encryption is inherently serial (each block is chained into the next) and
+ * stays a tight single-thread loop. Decryption of block i only needs
+ * ciphertext blocks i and i-1, so decryptParallel() splits the input into
+ * AESParallel chunks and decrypts them on a ForkJoinPool.
+ *
+ * Input lengths must be a multiple of the block size (no padding here).
+ * The chaining value carries over between calls, so a message can be fed
+ * in pieces. In-place operation (in == out, same offsets) is allowed.
+ */
+public class AES_CBC {
+
+    private final AESCipher cipher;
+    private final byte[] chain = new byte[AES_Constants.BLOCK_SIZE];
+
+    public AES_CBC(AESCipher cipher, byte[] iv) {
+        if (iv == null || iv.length != AES_Constants.BLOCK_SIZE) {
+            throw new IllegalArgumentException("CBC IV must be " + AES_Constants.BLOCK_SIZE + " bytes.");
+        }
+        this.cipher = cipher;
+        System.arraycopy(iv, 0, chain, 0, AES_Constants.BLOCK_SIZE);
+    }
+
+    /** Encrypts len bytes (whole blocks), chaining from the previous call. */
+    public void encrypt(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        checkLength(len);
+        byte[] prev = chain;
+        int prevOff = 0;
+        for (int i = 0; i < len; i += AES_Constants.BLOCK_SIZE) {
+            for (int j = 0; j < AES_Constants.BLOCK_SIZE; j++) {
+                out[outOff + i + j] = (byte) (in[inOff + i + j] ^ prev[prevOff + j]);
+            }
+            cipher.encryptBlock(out, outOff + i, out, outOff + i);
+            prev = out;
+            prevOff = outOff + i;
+        }
+        if (len > 0) {
+            System.arraycopy(out, outOff + len - AES_Constants.BLOCK_SIZE, chain, 0, AES_Constants.BLOCK_SIZE);
+        }
+    }
+
+    /** Decrypts len bytes (whole blocks) on the calling thread. */
+    public void decrypt(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        checkLength(len);
+        if (len == 0) return;
+        byte[] last = new byte[AES_Constants.BLOCK_SIZE];
+        System.arraycopy(in, inOff + len - AES_Constants.BLOCK_SIZE, last, 0, AES_Constants.BLOCK_SIZE);
+        decryptRange(chain.clone(), in, inOff, len, out, outOff);
+        System.arraycopy(last, 0, chain, 0, AES_Constants.BLOCK_SIZE);
+    }
+
+    /** Decrypts len bytes (whole blocks) on the common pool. */
+    public void decryptParallel(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        decryptParallel(ForkJoinPool.commonPool(), in, inOff, len, out, outOff);
+    }
+
+    /*
+     * decryptParallel:
+     * Every chunk needs the ciphertext block just before it. Those boundary
+     * blocks (and the final chaining value) are copied up front, because with
+     * in-place operation the neighbouring chunk may already have overwritten them.
+     */
+    public void decryptParallel(ForkJoinPool pool, byte[] in, int inOff, int len, byte[] out, int outOff) {
+        checkLength(len);
+        int nBlocks = len / AES_Constants.BLOCK_SIZE;
+        if (nBlocks == 0) return;
+
+        int chunkBytes = AESParallel.CHUNK_BLOCKS * AES_Constants.BLOCK_SIZE;
+        int boundaries = (nBlocks - 1) / AESParallel.CHUNK_BLOCKS;
+        byte[] prevBlocks = new byte[(boundaries + 1) * AES_Constants.BLOCK_SIZE];
+        System.arraycopy(chain, 0, prevBlocks, 0, AES_Constants.BLOCK_SIZE);
+        for (int b = 1; b <= boundaries; b++) {
+            System.arraycopy(in, inOff + b * chunkBytes - AES_Constants.BLOCK_SIZE,
+                    prevBlocks, b * AES_Constants.BLOCK_SIZE, AES_Constants.BLOCK_SIZE);
+        }
+        byte[] last = new byte[AES_Constants.BLOCK_SIZE];
+        System.arraycopy(in, inOff + len - AES_Constants.BLOCK_SIZE, last, 0, AES_Constants.BLOCK_SIZE);
+
+        AESParallel.forEachChunk(pool, nBlocks, (from, to) -> {
+            byte[] prev = new byte[AES_Constants.BLOCK_SIZE];
+            System.arraycopy(prevBlocks, (from / AESParallel.CHUNK_BLOCKS) * AES_Constants.BLOCK_SIZE,
+                    prev, 0, AES_Constants.BLOCK_SIZE);
+            int begin = from * AES_Constants.BLOCK_SIZE;
+            decryptRange(prev, in, inOff + begin, (to - from) * AES_Constants.BLOCK_SIZE, out, outOff + begin);
+        });
+
+        System.arraycopy(last, 0, chain, 0, AES_Constants.BLOCK_SIZE);
+    }
+
+    /** Serial CBC decryption of whole blocks; prev is a scratch copy of the chaining value. */
+    private void decryptRange(byte[] prev, byte[] in, int inOff, int len, byte[] out, int outOff) {
+        byte[] saved = new byte[AES_Constants.BLOCK_SIZE];
+        for (int i = 0; i < len; i += AES_Constants.BLOCK_SIZE) {
+            // keep the ciphertext before an in-place decrypt overwrites it
+            System.arraycopy(in, inOff + i, saved, 0, AES_Constants.BLOCK_SIZE);
+            cipher.decryptBlock(in, inOff + i, out, outOff + i);
+            for (int j = 0; j < AES_Constants.BLOCK_SIZE; j++) {
+                out[outOff + i + j] ^= prev[j];
+            }
+            byte[] t = prev;
+            prev = saved;
+            saved = t;
+        }
+    }
+
+    /** The chaining value itself, for AES_CBCMultiBuffer, which advances it in place. */
+    byte[] chainingValue() {
+        return chain;
+    }
+
+    /** Encryption schedule of this stream's key, for AES_CBCMultiBuffer. */
+    int[] encryptionSchedule() {
+        return cipher.encryptionSchedule();
+    }
+
+    static void checkLength(int len) {
+        if (len < 0 || len % AES_Constants.BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("CBC input must be a multiple of " + AES_Constants.BLOCK_SIZE + " bytes.");
+        }
+    }
+}
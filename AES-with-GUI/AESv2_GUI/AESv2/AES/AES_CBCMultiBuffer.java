@@ -0,0 +1,180 @@
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+
+/**
+ * AES_CBCMultiBuffer.java
+ * Multi-buffer CBC encryption: many independent AES_CBC streams encrypted
+ * together on one thread. EXPERIMENTAL: not used by any other class.
+ *
+ * On the machines measured so far this is not faster than encrypting the
+ * streams one by one with AES_CBC.encrypt (AESBenchmark "cbc" on one core:
+ * from 15% slower to 15% faster, no consistent gain). A single T-table CBC
+ * chain already runs close to the ECB rate there, so the gather/scatter per
+ * block eats what the overlap gains. Use AES_CBC unless a benchmark on the
+ * target shows otherwise.
+ *
+ * CBC encryption of one stream is serial, so a single stream never fills
+ * the interleaved kernel. This scheduler keeps up to LANES streams in
+ * flight: each step gathers the next plaintext block of every lane, XORs
+ * it into that lane's chaining value, encrypts all lanes in one call of
+ * AESFastEngine.encryptWordsMultiKey and scatters the ciphertext back to the
+ * lanes' output arrays. A lane whose job ends takes the next queued job,
+ * so streams of different lengths keep every lane busy, as in
+ * AES_CMAC.macAll. Streams may have different keys: a lane copies its
+ * stream's schedule next to the others when it takes a job, for
+ * AESFastEngine.encryptWordsMultiKey.
+ *
+ * Usage: submit() pieces of any number of streams, then run(). Pieces of
+ * the same stream are encrypted in submission order and never in two lanes
+ * at once; each stream's chaining value is updated as with
+ * AES_CBC.encrypt, so the streams can go on with either API afterwards.
+ * A stream is only touched inside run(), and it must not be used elsewhere
+ * until run() returns.
+ *
+ * Pieces are queued as Job records that are recycled across run() calls,
+ * and the stream -> last piece map is an open-addressed IdentityHashMap
+ * that keeps its table on clear(), so after warm-up submit() allocates
+ * nothing.
+ *
+ * An instance is not thread-safe; use one per worker thread.
+ */
+public class AES_CBCMultiBuffer {
+
+    public static final int LANES = AESFastEngine.INTERLEAVE;
+
+    private final ArrayDeque<Job> queue = new ArrayDeque<>();
+    private final ArrayDeque<Job> spare = new ArrayDeque<>(); // finished jobs, reused by submit
+    private final IdentityHashMap<AES_CBC, Job> lastJob = new IdentityHashMap<>(); // stream -> its latest queued job
+
+    private final Job[] jobs = new Job[LANES];  // job in each lane, null = lane idle
+    private final int[] done = new int[LANES];  // bytes of that job already encrypted
+    private final int[] schedules = new int[LANES * AES_Constants.TOTAL_WORDS]; // lane keys, side by side
+    private final int[] st = new int[4 * LANES];
+
+    /*
+     * submit:
+     * Queues len bytes (whole blocks) of stream for encryption from in[inOff]
+     * to out[outOff], chained after everything already queued for the same
+     * stream. In-place (in == out, same offsets) is allowed.
+     */
+    public void submit(AES_CBC stream, byte[] in, int inOff, int len, byte[] out, int outOff) {
+        AES_CBC.checkLength(len);
+        Job job = spare.isEmpty() ? new Job() : spare.pop();
+        job.set(stream, in, inOff, len, out, outOff);
+        Job last = lastJob.put(stream, job);
+        if (last != null) {
+            last.next = job; // runs in the lane of the previous piece, right after it
+        } else {
+            queue.add(job);
+        }
+    }
+
+    /** Number of streams with work queued. */
+    public int pendingStreams() {
+        return lastJob.size();
+    }
+
+    /*
+     * run:
+     * Encrypts everything submitted. Lanes are filled from the queue; an
+     * idle lane below the highest busy one is encrypted along with the
+     * others (its result is ignored), which only happens at the tail.
+     */
+    public void run() {
+        try {
+            while (true) {
+                int top = 0;
+                for (int lane = 0; lane < LANES; lane++) {
+                    while (true) {
+                        if (jobs[lane] == null) {
+                            if (queue.isEmpty()) break;
+                            start(lane, queue.poll());
+                        }
+                        if (done[lane] < jobs[lane].len) break;
+                        finish(lane); // empty piece
+                    }
+                    Job job = jobs[lane];
+                    if (job == null) continue;
+                    int p = job.inOff + done[lane];
+                    int j = 4 * lane;
+                    st[j] ^= AES_Utils.loadWord(job.in, p);
+                    st[j + 1] ^= AES_Utils.loadWord(job.in, p + 4);
+                    st[j + 2] ^= AES_Utils.loadWord(job.in, p + 8);
+                    st[j + 3] ^= AES_Utils.loadWord(job.in, p + 12);
+                    top = lane + 1;
+                }
+                if (top == 0) {
+                    return; // queue empty and every lane idle
+                }
+                AESFastEngine.encryptWordsMultiKey(schedules, st, 4 * top);
+                for (int lane = 0; lane < top; lane++) {
+                    Job job = jobs[lane];
+                    if (job == null) continue;
+                    int p = job.outOff + done[lane];
+                    for (int i = 0; i < 4; i++) {
+                        AES_Utils.storeWord(st[4 * lane + i], job.out, p + 4 * i);
+                    }
+                    done[lane] += AES_Constants.BLOCK_SIZE;
+                    if (done[lane] == job.len) {
+                        finish(lane);
+                    }
+                }
+            }
+        } finally {
+            for (int lane = 0; lane < LANES; lane++) {
+                jobs[lane] = null; // only reached with busy lanes if an exception escaped
+            }
+            queue.clear();
+            lastJob.clear();
+        }
+    }
+
+    /** Loads the job's chaining value into the lane (the stream's current one). */
+    private void start(int lane, Job job) {
+        jobs[lane] = job;
+        done[lane] = 0;
+        System.arraycopy(job.stream.encryptionSchedule(), 0, schedules, lane * AES_Constants.TOTAL_WORDS,
+                AES_Constants.TOTAL_WORDS);
+        byte[] chain = job.stream.chainingValue();
+        for (int i = 0; i < 4; i++) {
+            st[4 * lane + i] = AES_Utils.loadWord(chain, 4 * i);
+        }
+    }
+
+    /*
+     * finish:
+     * Writes the lane's chaining value back to the stream. The stream's next
+     * piece, if any, continues in the same lane without reloading it.
+     */
+    private void finish(int lane) {
+        Job job = jobs[lane];
+        byte[] chain = job.stream.chainingValue();
+        for (int i = 0; i < 4; i++) {
+            AES_Utils.storeWord(st[4 * lane + i], chain, 4 * i);
+        }
+        if (job.next == null) {
+            lastJob.remove(job.stream);
+        }
+        jobs[lane] = job.next;
+        done[lane] = 0;
+        job.set(null, null, 0, 0, null, 0);
+        spare.push(job);
+    }
+
+    private static final class Job {
+        AES_CBC stream;
+        byte[] in, out;
+        int inOff, len, outOff;
+        Job next; // the stream's following piece
+
+        void set(AES_CBC stream, byte[] in, int inOff, int len, byte[] out, int outOff) {
+            this.next = null;
+            this.stream = stream;
+            this.in = in;
+            this.inOff = inOff;
+            this.len = len;
+            this.out = out;
+            this.outOff = outOff;
+        }
+    }
+}
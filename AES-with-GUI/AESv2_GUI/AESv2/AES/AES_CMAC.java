@@ -0,0 +1,201 @@
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * AES_CMAC.java
+ * AES-CMAC message authentication (RFC 4493 / NIST SP 800-38B) on the fast
+ * AES-128 engine, with a batch mode for many short messages.
+ *
+ * The subkeys K1 and K2 are derived from L = E_K(0^128) once in the
+ * constructor and kept next to the cipher, so a MAC costs only the
+ * CBC-MAC chain itself. Keep one AES_CMAC per key; it holds no per-call
+ * state and can be shared between threads.
+ *
+ * CBC-MAC is serial within a message: each block waits for the previous
+ * encryption. macAll() runs the chains of INTERLEAVE independent messages
+ * side by side through AESFastEngine's interleaved kernel, one block of each
+ * per round loop, and feeds the next message into a lane as soon as its
+ * current one finishes, so messages of different lengths keep every lane busy.
+ */
+public class AES_CMAC {
+
+    public static final int TAG_LENGTH = AES_Constants.BLOCK_SIZE;
+
+    private static final int LANES = AESFastEngine.INTERLEAVE;
+
+    private final AESCipher cipher; // schedule fetched per call, so a destroyed cipher is refused
+    private final int[] k1 = new int[4]; // subkeys as big-endian column words
+    private final int[] k2 = new int[4];
+
+    public AES_CMAC(AESCipher cipher) {
+        this.cipher = cipher;
+        byte[] l = new byte[AES_Constants.BLOCK_SIZE];
+        cipher.encryptBlock(l, 0, l, 0);
+        int[] lw = new int[4];
+        for (int i = 0; i < 4; i++) {
+            lw[i] = AES_Utils.loadWord(l, 4 * i);
+        }
+        doubleBlock(lw, k1);
+        doubleBlock(k1, k2);
+        Arrays.fill(l, (byte) 0);
+        Arrays.fill(lw, 0);
+    }
+
+    /** Returns the 16-byte tag of msg. */
+    public byte[] mac(byte[] msg) {
+        byte[] tag = new byte[TAG_LENGTH];
+        mac(msg, 0, msg.length, tag, 0);
+        return tag;
+    }
+
+    /*
+     * mac:
+     * Computes the tag of msg[off..off+len) into tag[tagOff..tagOff+15]
+     * (RFC 4493 section 2.4): all blocks but the last are chained as in
+     * CBC-MAC, and the last one is XORed with K1 if complete, or padded with
+     * 10* and XORed with K2 otherwise.
+     */
+    public void mac(byte[] msg, int off, int len, byte[] tag, int tagOff) {
+        int[] w = cipher.encryptionSchedule();
+        int[] st = new int[4];
+        int n = blockCount(len);
+        for (int b = 0; b < n - 1; b++) {
+            xorBlock(msg, off + 16 * b, st, 0);
+            AESFastEngine.encryptWords(w, st, 4);
+        }
+        xorLastBlock(msg, off, len, n, st, 0);
+        AESFastEngine.encryptWords(w, st, 4);
+        storeTag(st, 0, tag, tagOff);
+    }
+
+    /** Recomputes the tag of msg[off..off+len) and compares it in constant time. */
+    public boolean verify(byte[] msg, int off, int len, byte[] tag, int tagOff) {
+        byte[] expected = new byte[TAG_LENGTH];
+        mac(msg, off, len, expected, 0);
+        return MessageDigest.isEqual(expected, Arrays.copyOfRange(tag, tagOff, tagOff + TAG_LENGTH));
+    }
+
+    /** Batch of separate arrays: returns one tag per message. */
+    public byte[][] macAll(byte[][] messages) {
+        int count = messages.length;
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            lengths[i] = messages[i].length;
+        }
+        byte[] flat = new byte[TAG_LENGTH * count];
+        macAll(messages, null, offsets, lengths, count, flat, 0);
+        byte[][] tags = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            tags[i] = Arrays.copyOfRange(flat, TAG_LENGTH * i, TAG_LENGTH * (i + 1));
+        }
+        return tags;
+    }
+
+    /*
+     * macAll:
+     * Tags count messages that are slices of one buffer, message i being
+     * data[offsets[i]..offsets[i]+lengths[i]), into tags[tagsOff + 16 * i].
+     * Same tags as calling mac() on each message.
+     */
+    public void macAll(byte[] data, int[] offsets, int[] lengths, int count, byte[] tags, int tagsOff) {
+        macAll(null, data, offsets, lengths, count, tags, tagsOff);
+    }
+
+    /*
+     * macAll (scheduler):
+     * Message i lives in arrays[i] (or data when arrays is null) at
+     * offsets[i]. Up to LANES chains advance together, one block each per
+     * call of the interleaved kernel; a lane whose message ends takes the
+     * next message on the following step.
+     */
+    private void macAll(byte[][] arrays, byte[] data, int[] offsets, int[] lengths, int count,
+                        byte[] tags, int tagsOff) {
+        int[] w = cipher.encryptionSchedule();
+        int[] lanes = new int[LANES];   // message index in each lane
+        int[] blocks = new int[LANES];  // block count of that message, 0 = lane idle
+        int[] done = new int[LANES];    // blocks already absorbed
+        int[] st = new int[LANES * 4];
+        int next = 0;
+        while (true) {
+            int top = 0;
+            for (int lane = 0; lane < LANES; lane++) {
+                if (blocks[lane] == 0 && next < count) {
+                    lanes[lane] = next++;
+                    blocks[lane] = blockCount(lengths[lanes[lane]]);
+                    done[lane] = 0;
+                    Arrays.fill(st, 4 * lane, 4 * lane + 4, 0);
+                }
+                if (blocks[lane] == 0) continue;
+                int i = lanes[lane];
+                byte[] m = arrays == null ? data : arrays[i];
+                if (done[lane] < blocks[lane] - 1) {
+                    xorBlock(m, offsets[i] + 16 * done[lane], st, 4 * lane);
+                } else {
+                    xorLastBlock(m, offsets[i], lengths[i], blocks[lane], st, 4 * lane);
+                }
+                top = lane + 1;
+            }
+            if (top == 0) {
+                return; // no message left and every lane idle
+            }
+            // idle lanes below 'top' are encrypted too; that only happens at the tail
+            AESFastEngine.encryptWords(w, st, 4 * top);
+            for (int lane = 0; lane < top; lane++) {
+                if (blocks[lane] != 0 && ++done[lane] == blocks[lane]) {
+                    storeTag(st, 4 * lane, tags, tagsOff + TAG_LENGTH * lanes[lane]);
+                    blocks[lane] = 0;
+                }
+            }
+        }
+    }
+
+    /** Number of CBC-MAC blocks: at least one, even for an empty message. */
+    private static int blockCount(int len) {
+        return Math.max(1, (len + AES_Constants.BLOCK_SIZE - 1) / AES_Constants.BLOCK_SIZE);
+    }
+
+    private static void xorBlock(byte[] b, int off, int[] st, int j) {
+        st[j] ^= AES_Utils.loadWord(b, off);
+        st[j + 1] ^= AES_Utils.loadWord(b, off + 4);
+        st[j + 2] ^= AES_Utils.loadWord(b, off + 8);
+        st[j + 3] ^= AES_Utils.loadWord(b, off + 12);
+    }
+
+    /* xorLastBlock: XORs block n-1 of the message, completed with K1 or padded with K2, into st[j..j+3]. */
+    private void xorLastBlock(byte[] msg, int off, int len, int n, int[] st, int j) {
+        int start = 16 * (n - 1);
+        int rest = len - start;
+        if (rest == AES_Constants.BLOCK_SIZE) {
+            xorBlock(msg, off + start, st, j);
+            st[j] ^= k1[0];
+            st[j + 1] ^= k1[1];
+            st[j + 2] ^= k1[2];
+            st[j + 3] ^= k1[3];
+            return;
+        }
+        byte[] last = new byte[AES_Constants.BLOCK_SIZE];
+        System.arraycopy(msg, off + start, last, 0, rest);
+        last[rest] = (byte) 0x80;
+        xorBlock(last, 0, st, j);
+        st[j] ^= k2[0];
+        st[j + 1] ^= k2[1];
+        st[j + 2] ^= k2[2];
+        st[j + 3] ^= k2[3];
+    }
+
+    private static void storeTag(int[] st, int j, byte[] out, int off) {
+        for (int i = 0; i < 4; i++) {
+            AES_Utils.storeWord(st[j + i], out, off + 4 * i);
+        }
+    }
+
+    /* doubleBlock: out = in * x in GF(2^128), i.e. shift left one bit and fold the carry into 0x87. */
+    private static void doubleBlock(int[] in, int[] out) {
+        int carry = in[0] >>> 31;
+        for (int i = 0; i < 3; i++) {
+            out[i] = (in[i] << 1) | (in[i + 1] >>> 31);
+        }
+        out[3] = (in[3] << 1) ^ (-carry & 0x87);
+    }
+}
@@ -0,0 +1,342 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * AES_CTR.java
+ * Counter (CTR) mode on top of the fast AES-128 engine (NIST SP 800-38A 6.5).
+ *
+ * The 16-byte IV is the initial counter block; block i of the stream is
+ * encrypted with counter IV + i (128-bit big-endian addition). Because every
+ * keystream block only depends on its index, crypt() can start at any byte
+ * offset, and cryptParallel() splits large inputs into counter-aligned chunks
+ * on a ForkJoinPool. Both give byte-identical output. Encryption and
+ * decryption are the same operation.
+ *
+ * With counterBits = 32 only the last four bytes of the counter block count
+ * (inc32 of NIST SP 800-38D), as GCM requires; the first 12 bytes stay fixed.
+ */
+public class AES_CTR {
+
+    // AES_CTRVector.crypt, looked up by name so that this class compiles and runs without
+    // jdk.incubator.vector; null unless the module is in the boot layer and the class was built
+    private static final MethodHandle VECTOR_CRYPT = vectorKernel();
+    private static final boolean VECTOR_AVAILABLE = VECTOR_CRYPT != null;
+
+    private final AESCipher cipher;
+    private final byte[] iv;
+    private final boolean inc32;
+
+    // streaming position for update()
+    private long position;
+
+    // keystream scratch for update(); crypt() may run on many threads and uses KEYSTREAM
+    private final CounterKeystream scratch = new CounterKeystream();
+    private static final ThreadLocal<CounterKeystream> KEYSTREAM = ThreadLocal.withInitial(CounterKeystream::new);
+
+    public AES_CTR(AESCipher cipher, byte[] iv) {
+        this(cipher, iv, 128);
+    }
+
+    /** counterBits is 128 (whole block counts) or 32 (GCM-style inc32). */
+    public AES_CTR(AESCipher cipher, byte[] iv, int counterBits) {
+        if (iv == null || iv.length != AES_Constants.BLOCK_SIZE) {
+            throw new IllegalArgumentException("CTR IV must be " + AES_Constants.BLOCK_SIZE + " bytes.");
+        }
+        if (counterBits != 32 && counterBits != 128) {
+            throw new IllegalArgumentException("Counter width must be 32 or 128 bits.");
+        }
+        this.cipher = cipher;
+        this.iv = iv.clone();
+        this.inc32 = counterBits == 32;
+    }
+
+    /** Processes the next len bytes of the stream and advances the position. */
+    public void update(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        crypt(scratch, position, in, inOff, len, out, outOff);
+        position += len;
+    }
+
+    /** Processes the next len bytes on the common pool and advances the position. */
+    public void updateParallel(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        cryptParallel(scratch, ForkJoinPool.commonPool(), position, in, inOff, len, out, outOff);
+        position += len;
+    }
+
+    /** Byte offset the next update() starts at. */
+    public long getPosition() {
+        return position;
+    }
+
+    /** Moves the streaming position (any byte offset; no earlier data is needed). */
+    public void seek(long position) {
+        if (position < 0) {
+            throw new IllegalArgumentException("Position must not be negative.");
+        }
+        this.position = position;
+    }
+
+    /*
+     * crypt:
+     * XORs in[inOff..inOff+len) with the keystream starting at byte offset
+     * 'offset' of the stream. Stateless, so it is safe to call from many
+     * threads; the scratch arrays are per thread, so nothing is allocated.
+     */
+    public void crypt(long offset, byte[] in, int inOff, int len, byte[] out, int outOff) {
+        crypt(KEYSTREAM.get(), offset, in, inOff, len, out, outOff);
+    }
+
+    private void crypt(CounterKeystream ks, long offset, byte[] in, int inOff, int len, byte[] out, int outOff) {
+        ks.start(cipher, iv, inc32, offset);
+        try {
+            byte[] k = ks.ks;
+            for (int pos = 0; pos < len; ) {
+                int n = ks.next(len - pos), from = ks.from;
+                int i = inOff + pos, o = outOff + pos;
+                for (int j = 0; j < n; j++) {
+                    out[o + j] = (byte) (in[i + j] ^ k[from + j]);
+                }
+                pos += n;
+            }
+        } finally {
+            ks.end();
+        }
+    }
+
+    /*
+     * crypt (ByteBuffer):
+     * Same as crypt() for the bytes between in.position() and in.limit(),
+     * written to out from out.position(); both positions advance. Works on
+     * heap, direct and memory-mapped buffers without copying the data into a
+     * byte[]: only the keystream lives on the heap, and the XOR runs 8 bytes
+     * at a time through getLong/putLong. The XOR does not care about byte
+     * order as long as all three buffers agree, so the keystream view takes
+     * the order of the data and the buffers are only duplicated when in and
+     * out differ.
+     */
+    public void crypt(long offset, ByteBuffer in, ByteBuffer out) {
+        int len = in.remaining();
+        if (out.remaining() < len) {
+            throw new IllegalArgumentException("Output buffer too small: " + out.remaining() + " < " + len);
+        }
+        ByteBuffer src = in, dst = out;
+        if (in.order() != out.order()) {
+            src = in.duplicate().order(ByteOrder.BIG_ENDIAN);
+            dst = out.duplicate().order(ByteOrder.BIG_ENDIAN);
+        }
+        int inPos = src.position(), outPos = dst.position();
+
+        CounterKeystream ks = KEYSTREAM.get();
+        ks.start(cipher, iv, inc32, offset);
+        ks.view.order(src.order());
+        try {
+            byte[] k = ks.ks;
+            for (int pos = 0; pos < len; ) {
+                int n = ks.next(len - pos), from = ks.from;
+                int i = inPos + pos, o = outPos + pos;
+                int j = 0;
+                for (; j + 8 <= n; j += 8) {
+                    dst.putLong(o + j, src.getLong(i + j) ^ ks.view.getLong(from + j));
+                }
+                for (; j < n; j++) {
+                    dst.put(o + j, (byte) (src.get(i + j) ^ k[from + j]));
+                }
+                pos += n;
+            }
+        } finally {
+            ks.end();
+        }
+        in.position(in.position() + len);
+        out.position(out.position() + len);
+    }
+
+    /*
+     * cryptVector:
+     * Same result as crypt(), using the SIMD kernel in AES_CTRVector when
+     * jdk.incubator.vector is present (--add-modules jdk.incubator.vector),
+     * and the scalar engine otherwise. The kernel is called through a
+     * MethodHandle, so AES_CTRVector.java is the only source that needs the
+     * module to compile; leave it out and everything else still builds.
+     */
+    public void cryptVector(long offset, byte[] in, int inOff, int len, byte[] out, int outOff) {
+        if (VECTOR_AVAILABLE && !inc32) {
+            try {
+                VECTOR_CRYPT.invokeExact(cipher.encryptionSchedule(), iv, offset, in, inOff, len, out, outOff);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t); // the kernel throws no checked exceptions
+            }
+        } else {
+            crypt(offset, in, inOff, len, out, outOff);
+        }
+    }
+
+    /** True when cryptVector runs the Vector API kernel rather than the scalar fallback. */
+    public static boolean isVectorAvailable() {
+        return VECTOR_AVAILABLE;
+    }
+
+    private static MethodHandle vectorKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return MethodHandles.lookup().findStatic(Class.forName("AES_CTRVector"), "crypt",
+                    MethodType.methodType(void.class, int[].class, byte[].class, long.class,
+                            byte[].class, int.class, int.class, byte[].class, int.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null; // built without AES_CTRVector.java
+        }
+    }
+
+    /*
+     * cryptParallel:
+     * Same result as crypt(), but the whole blocks are split into chunks of
+     * AESParallel.CHUNK_BLOCKS and processed on the given pool. Inputs too
+     * small to split run inline on the calling thread.
+     */
+    public void cryptParallel(ForkJoinPool pool, long offset, byte[] in, int inOff, int len, byte[] out, int outOff) {
+        cryptParallel(KEYSTREAM.get(), pool, offset, in, inOff, len, out, outOff);
+    }
+
+    private void cryptParallel(CounterKeystream ks, ForkJoinPool pool, long offset,
+                               byte[] in, int inOff, int len, byte[] out, int outOff) {
+        if (len < 2 * AESParallel.CHUNK_BLOCKS * AES_Constants.BLOCK_SIZE) {
+            crypt(ks, offset, in, inOff, len, out, outOff);
+            return;
+        }
+        // leading partial block up to the next counter boundary
+        int head = (int) Math.min((AES_Constants.BLOCK_SIZE - (offset & 15)) & 15, len);
+        if (head > 0) {
+            crypt(ks, offset, in, inOff, head, out, outOff);
+        }
+        final long start = offset + head;
+        final int rest = len - head;
+        final int restIn = inOff + head, restOut = outOff + head;
+        int nBlocks = (rest + AES_Constants.BLOCK_SIZE - 1) / AES_Constants.BLOCK_SIZE;
+
+        AESParallel.forEachChunk(pool, nBlocks, (from, to) -> {
+            int begin = from * AES_Constants.BLOCK_SIZE;
+            int end = Math.min(to * AES_Constants.BLOCK_SIZE, rest);
+            crypt(start + begin, in, restIn + begin, end - begin, out, restOut + begin);
+        });
+    }
+
+    /*
+     * Keystream:
+     * The CTR loop shared by every CTR implementation in the tree, as a
+     * reusable cursor over the keystream. After start(offset), each
+     * next(remaining) has blocks() write up to ks.length / 16 keystream
+     * blocks into ks and returns how many of the bytes from ks[from] are
+     * needed (the part of the first block before offset is skipped). The
+     * caller XORs those into its data and calls next() again until done.
+     * An instance is reused from call to call, so the loop allocates nothing.
+     */
+    abstract static class Keystream {
+        final byte[] ks;
+        int from;           // start of the bytes returned by next()
+        private long block; // next block index of the stream
+        private int skip;
+
+        Keystream(int batchBlocks) {
+            this.ks = new byte[batchBlocks * AES_Constants.BLOCK_SIZE];
+        }
+
+        final void start(long offset) {
+            block = offset >>> 4;
+            skip = (int) (offset & 15);
+        }
+
+        final int next(long remaining) {
+            int nBlocks = (int) Math.min(ks.length / AES_Constants.BLOCK_SIZE,
+                    (skip + remaining + AES_Constants.BLOCK_SIZE - 1) / AES_Constants.BLOCK_SIZE);
+            blocks(block, nBlocks);
+            block += nBlocks;
+            from = skip;
+            skip = 0;
+            return (int) Math.min(nBlocks * AES_Constants.BLOCK_SIZE - from, remaining);
+        }
+
+        /** Writes the keystream of blocks first .. first+nBlocks-1 into ks[0 .. 16 * nBlocks). */
+        abstract void blocks(long first, int nBlocks);
+    }
+
+    /*
+     * CounterKeystream:
+     * The keystream of (cipher, iv) on the interleaved T-table engine: lays
+     * out the counter blocks (inc32 or 128-bit) and encrypts them together.
+     * Holds the cipher and IV only between start() and end().
+     */
+    static final class CounterKeystream extends Keystream {
+        final ByteBuffer view = ByteBuffer.wrap(ks); // for 8-byte XORs in the data's byte order
+        private final byte[] counter = new byte[AES_Constants.BLOCK_SIZE];
+        private final byte[] counters = new byte[AESFastEngine.INTERLEAVE * AES_Constants.BLOCK_SIZE];
+        private final int[] state = new int[AESFastEngine.INTERLEAVE * 4];
+        private AESCipher cipher;
+        private byte[] iv;
+        private boolean inc32;
+
+        CounterKeystream() {
+            super(AESFastEngine.INTERLEAVE);
+        }
+
+        void start(AESCipher cipher, byte[] iv, boolean inc32, long offset) {
+            this.cipher = cipher;
+            this.iv = iv;
+            this.inc32 = inc32;
+            start(offset);
+        }
+
+        void end() {
+            cipher = null;
+            iv = null;
+        }
+
+        @Override
+        void blocks(long first, int nBlocks) {
+            if (inc32) {
+                System.arraycopy(iv, 0, counter, 0, 12);
+                AES_Utils.storeWord(AES_Utils.loadWord(iv, 12) + (int) first, counter, 12);
+            } else {
+                counterBlock(iv, first, counter, 0);
+            }
+            for (int b = 0; b < nBlocks; b++) {
+                System.arraycopy(counter, 0, counters, b * AES_Constants.BLOCK_SIZE, AES_Constants.BLOCK_SIZE);
+                if (inc32) {
+                    AES_Utils.storeWord(AES_Utils.loadWord(counter, 12) + 1, counter, 12);
+                } else {
+                    increment(counter);
+                }
+            }
+            AESFastEngine.encryptBlocks(cipher.encryptionSchedule(), counters, 0, nBlocks, ks, 0, state);
+        }
+    }
+
+    /** A thread's CounterKeystream, for callers outside this class that have no scratch of their own. */
+    static CounterKeystream threadKeystream() {
+        return KEYSTREAM.get();
+    }
+
+    /** Writes iv + blockIndex (mod 2^128, big-endian) into counter[off..off+15]. */
+    static void counterBlock(byte[] iv, long blockIndex, byte[] counter, int off) {
+        long carry = 0;
+        long add = blockIndex;
+        for (int i = AES_Constants.BLOCK_SIZE - 1; i >= 0; i--) {
+            long sum = (iv[i] & 0xFF) + (add & 0xFF) + carry;
+            counter[off + i] = (byte) sum;
+            carry = sum >>> 8;
+            add >>>= 8;
+        }
+    }
+
+    /** Increments a 128-bit big-endian counter block in place. */
+    static void increment(byte[] counter) {
+        for (int i = AES_Constants.BLOCK_SIZE - 1; i >= 0; i--) {
+            if (++counter[i] != 0) return;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * AES_CTRDRBG.java
+ * CTR_DRBG with AES-128 (NIST SP 800-90A Rev. 1, section 10.2.1), without a
+ * derivation function, and with buffered output for bulk randomness.
+ *
+ * State is the key K and the counter V. Generate runs V+1, V+2, ... through
+ * the interleaved ECB kernel (AESFastEngine.encryptBlocks) to fill a
+ * BUFFER_SIZE buffer in one request (64 KiB, the largest request the
+ * standard allows for AES), then updates K and V so the buffered bytes
+ * cannot be recomputed from the new state. nextBytes() hands out the buffer
+ * and zeroes what it hands out; the next request refills it.
+ *
+ * Entropy comes from the platform SecureRandom: 32 bytes (the seed length)
+ * at instantiation and on every reseed. The reseed counter counts Generate
+ * requests; after reseedInterval of them the next request reseeds first.
+ *
+ * An instance is not thread-safe. current() gives each thread its own, so
+ * IV and nonce generation in many threads never contends on a lock;
+ * AESProvider exposes the same per-thread instances as the SecureRandom
+ * algorithm "AES-CTR-DRBG".
+ */
+public class AES_CTRDRBG {
+
+    public static final int SEED_LENGTH = 32; // key length + block length
+    public static final int BUFFER_SIZE = 64 * 1024; // 2^19 bits, max_number_of_bits_per_request
+    public static final long DEFAULT_RESEED_INTERVAL = 1L << 32; // SP 800-90A allows up to 2^48
+
+    private static final SecureRandom ENTROPY = new SecureRandom();
+    private static final ThreadLocal<AES_CTRDRBG> CURRENT = ThreadLocal.withInitial(() -> new AES_CTRDRBG(null));
+
+    private final long reseedInterval;
+    private final byte[] v = new byte[AES_Constants.BLOCK_SIZE];
+    private int[] w; // KeyExpansion schedule of K
+    private long reseedCounter;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] counters = new byte[BUFFER_SIZE];
+    private final int[] state = new int[AESFastEngine.INTERLEAVE * 4]; // engine scratch, wiped after update()
+    private int bufferPos = BUFFER_SIZE; // bytes of buffer already handed out
+
+    /** The calling thread's instance, created and seeded on first use. */
+    public static AES_CTRDRBG current() {
+        return CURRENT.get();
+    }
+
+    /** Seeds from the platform entropy source; personalization may be null. */
+    public AES_CTRDRBG(byte[] personalization) {
+        this(entropy(), personalization, DEFAULT_RESEED_INTERVAL);
+    }
+
+    /*
+     * AES_CTRDRBG:
+     * Instantiate (10.2.1.3.1) with caller-supplied entropy of SEED_LENGTH
+     * full-entropy bytes; personalization (at most SEED_LENGTH bytes, may be
+     * null) is XORed in. With known entropy the output is reproducible,
+     * which is what the known-answer tests rely on.
+     */
+    public AES_CTRDRBG(byte[] entropy, byte[] personalization, long reseedInterval) {
+        if (entropy == null || entropy.length != SEED_LENGTH) {
+            throw new IllegalArgumentException("CTR_DRBG entropy input must be " + SEED_LENGTH + " bytes.");
+        }
+        if (reseedInterval < 1 || reseedInterval > 1L << 48) {
+            throw new IllegalArgumentException("Reseed interval must be between 1 and 2^48.");
+        }
+        this.reseedInterval = reseedInterval;
+        byte[] seed = seedMaterial(entropy, personalization);
+        this.w = KeyExpansion.expandKey(new byte[AES_Constants.BLOCK_SIZE], false);
+        update(seed);
+        Arrays.fill(seed, (byte) 0);
+        this.reseedCounter = 1;
+    }
+
+    /** Fills bytes, like SecureRandom.nextBytes. */
+    public void nextBytes(byte[] bytes) {
+        nextBytes(bytes, 0, bytes.length);
+    }
+
+    /*
+     * nextBytes:
+     * Copies len bytes of output into out[off..]. Small calls (IVs, nonces)
+     * are served from the buffer; whole buffers are generated straight into
+     * out when len allows, without going through the buffer.
+     */
+    public void nextBytes(byte[] out, int off, int len) {
+        while (len > 0) {
+            if (bufferPos == BUFFER_SIZE) {
+                if (len >= BUFFER_SIZE) {
+                    generate(out, off, BUFFER_SIZE, null);
+                    off += BUFFER_SIZE;
+                    len -= BUFFER_SIZE;
+                    continue;
+                }
+                generate(buffer, 0, BUFFER_SIZE, null);
+                bufferPos = 0;
+            }
+            int n = Math.min(len, BUFFER_SIZE - bufferPos);
+            System.arraycopy(buffer, bufferPos, out, off, n);
+            Arrays.fill(buffer, bufferPos, bufferPos + n, (byte) 0);
+            bufferPos += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /*
+     * generate:
+     * One Generate request (10.2.1.5.1) of len <= BUFFER_SIZE bytes straight
+     * into out, bypassing the buffer; additional input (at most SEED_LENGTH
+     * bytes) may be null. Reseeds first when the counter has run out.
+     */
+    public void generate(byte[] out, int off, int len, byte[] additional) {
+        if (len < 0 || len > BUFFER_SIZE) {
+            throw new IllegalArgumentException("A CTR_DRBG request is at most " + BUFFER_SIZE + " bytes.");
+        }
+        if (reseedCounter > reseedInterval) {
+            reseed(entropy(), additional);
+            additional = null;
+        }
+        byte[] adata = null;
+        if (additional != null && additional.length > 0) {
+            adata = seedMaterial(new byte[SEED_LENGTH], additional);
+            update(adata);
+        }
+
+        int nBlocks = (len + AES_Constants.BLOCK_SIZE - 1) / AES_Constants.BLOCK_SIZE;
+        for (int b = 0; b < nBlocks; b++) {
+            AES_CTR.counterBlock(v, b + 1, counters, b * AES_Constants.BLOCK_SIZE);
+        }
+        int whole = len / AES_Constants.BLOCK_SIZE;
+        AESFastEngine.encryptBlocks(w, counters, 0, whole, out, off, state);
+        if (whole < nBlocks) {
+            byte[] last = new byte[AES_Constants.BLOCK_SIZE];
+            AESFastEngine.encryptBlock(w, counters, whole * AES_Constants.BLOCK_SIZE, last, 0);
+            System.arraycopy(last, 0, out, off + whole * AES_Constants.BLOCK_SIZE, len - whole * AES_Constants.BLOCK_SIZE);
+            Arrays.fill(last, (byte) 0);
+        }
+        AES_CTR.counterBlock(v, nBlocks, v, 0);
+
+        update(adata != null ? adata : new byte[SEED_LENGTH]);
+        reseedCounter++;
+        if (adata != null) {
+            Arrays.fill(adata, (byte) 0);
+        }
+    }
+
+    /** Reseed (10.2.1.4.1) with fresh platform entropy; additional may be null. */
+    public void reseed(byte[] additional) {
+        reseed(entropy(), additional);
+    }
+
+    /** Reseed with caller-supplied entropy of SEED_LENGTH bytes. */
+    public void reseed(byte[] entropy, byte[] additional) {
+        if (entropy == null || entropy.length != SEED_LENGTH) {
+            throw new IllegalArgumentException("CTR_DRBG entropy input must be " + SEED_LENGTH + " bytes.");
+        }
+        byte[] seed = seedMaterial(entropy, additional);
+        update(seed);
+        Arrays.fill(seed, (byte) 0);
+        reseedCounter = 1;
+        discardBuffer();
+    }
+
+    /** Generate requests since the last (re)seed, plus one, as in the standard. */
+    public long getReseedCounter() {
+        return reseedCounter;
+    }
+
+    /* discardBuffer: drops buffered output so nothing generated before a reseed is handed out after it. */
+    private void discardBuffer() {
+        Arrays.fill(buffer, bufferPos, BUFFER_SIZE, (byte) 0);
+        bufferPos = BUFFER_SIZE;
+    }
+
+    /*
+     * update:
+     * CTR_DRBG_Update (10.2.1.2): temp = E_K(V+1) || E_K(V+2), XORed with
+     * the 32 bytes of provided data; K is the first half, V the second.
+     */
+    private void update(byte[] provided) {
+        byte[] temp = new byte[SEED_LENGTH];
+        AES_CTR.counterBlock(v, 1, temp, 0);
+        AES_CTR.counterBlock(v, 2, temp, AES_Constants.BLOCK_SIZE);
+        AESFastEngine.encryptBlocks(w, temp, 0, 2, temp, 0, state);
+        Arrays.fill(state, 0);
+        for (int i = 0; i < SEED_LENGTH; i++) {
+            temp[i] ^= provided[i];
+        }
+        byte[] key = Arrays.copyOf(temp, AES_Constants.BLOCK_SIZE);
+        Arrays.fill(w, 0);
+        w = KeyExpansion.expandKey(key, false);
+        Arrays.fill(key, (byte) 0);
+        System.arraycopy(temp, AES_Constants.BLOCK_SIZE, v, 0, AES_Constants.BLOCK_SIZE);
+        Arrays.fill(temp, (byte) 0);
+    }
+
+    /* seedMaterial: entropy XOR (input zero-padded to SEED_LENGTH bytes). */
+    private static byte[] seedMaterial(byte[] entropy, byte[] input) {
+        if (input != null && input.length > SEED_LENGTH) {
+            throw new IllegalArgumentException("Personalization/additional input is at most " + SEED_LENGTH + " bytes.");
+        }
+        byte[] seed = entropy.clone();
+        if (input != null) {
+            for (int i = 0; i < input.length; i++) {
+                seed[i] ^= input[i];
+            }
+        }
+        return seed;
+    }
+
+    private static byte[] entropy() {
+        return ENTROPY.generateSeed(SEED_LENGTH);
+    }
+}
@@ -0,0 +1,120 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * AES_CTRVector.java
+ * AES-CTR keystream kernel written against the incubating Java Vector API.
+ *
+ * Each SIMD lane carries one counter block: s0..s3 hold column c of
+ * LANES consecutive blocks, and every round is four table gathers per column
+ * from AESTables.TE0..TE3 (built from AES_Constants.S_BOX), XORed with the
+ * broadcast round key from KeyExpansion. Output is identical to AES_CTR.crypt.
+ *
+ * Needs --add-modules jdk.incubator.vector at compile time and run time.
+ * Nothing refers to this class directly: AES_CTR.cryptVector looks crypt()
+ * up by name when the module is present, and otherwise (or when this file
+ * was left out of the build) falls back to the scalar engine.
+ */
+final class AES_CTRVector {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    static final int LANES = SPECIES.length();
+
+    private AES_CTRVector() {
+    }
+
+    /*
+     * crypt:
+     * XORs in[inOff..inOff+len) with the CTR keystream of (w, iv) starting at
+     * byte offset 'offset'. Same contract as AES_CTR.crypt.
+     */
+    static void crypt(int[] w, byte[] iv, long offset, byte[] in, int inOff, int len, byte[] out, int outOff) {
+        int[] c0 = new int[LANES], c1 = new int[LANES], c2 = new int[LANES], c3 = new int[LANES];
+        int[] index = new int[LANES];
+        byte[] counter = new byte[AES_Constants.BLOCK_SIZE];
+        byte[] keystream = new byte[LANES * AES_Constants.BLOCK_SIZE];
+
+        long block = offset >>> 4;
+        int skip = (int) (offset & 15);
+        while (len > 0) {
+            // counter words for LANES consecutive blocks, one block per lane
+            for (int l = 0; l < LANES; l++) {
+                AES_CTR.counterBlock(iv, block + l, counter, 0);
+                c0[l] = AES_Utils.loadWord(counter, 0);
+                c1[l] = AES_Utils.loadWord(counter, 4);
+                c2[l] = AES_Utils.loadWord(counter, 8);
+                c3[l] = AES_Utils.loadWord(counter, 12);
+            }
+            encryptLanes(w, c0, c1, c2, c3, index);
+            for (int l = 0; l < LANES; l++) {
+                int o = l * AES_Constants.BLOCK_SIZE;
+                AES_Utils.storeWord(c0[l], keystream, o);
+                AES_Utils.storeWord(c1[l], keystream, o + 4);
+                AES_Utils.storeWord(c2[l], keystream, o + 8);
+                AES_Utils.storeWord(c3[l], keystream, o + 12);
+            }
+
+            int n = Math.min(LANES * AES_Constants.BLOCK_SIZE - skip, len);
+            for (int j = 0; j < n; j++) {
+                out[outOff + j] = (byte) (in[inOff + j] ^ keystream[skip + j]);
+            }
+            inOff += n;
+            outOff += n;
+            len -= n;
+            block += LANES;
+            skip = 0;
+        }
+    }
+
+    /** Encrypts LANES blocks given as column words; results replace c0..c3. */
+    private static void encryptLanes(int[] w, int[] c0, int[] c1, int[] c2, int[] c3, int[] index) {
+        IntVector s0 = IntVector.fromArray(SPECIES, c0, 0).lanewise(VectorOperators.XOR, w[0]);
+        IntVector s1 = IntVector.fromArray(SPECIES, c1, 0).lanewise(VectorOperators.XOR, w[1]);
+        IntVector s2 = IntVector.fromArray(SPECIES, c2, 0).lanewise(VectorOperators.XOR, w[2]);
+        IntVector s3 = IntVector.fromArray(SPECIES, c3, 0).lanewise(VectorOperators.XOR, w[3]);
+
+        int k = 4;
+        for (int round = 1; round < AES_Constants.ROUNDS; round++) {
+            IntVector t0 = roundColumn(s0, s1, s2, s3, w[k], index);
+            IntVector t1 = roundColumn(s1, s2, s3, s0, w[k + 1], index);
+            IntVector t2 = roundColumn(s2, s3, s0, s1, w[k + 2], index);
+            IntVector t3 = roundColumn(s3, s0, s1, s2, w[k + 3], index);
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
+            k += 4;
+        }
+
+        finalColumn(s0, s1, s2, s3, w[k], index).intoArray(c0, 0);
+        finalColumn(s1, s2, s3, s0, w[k + 1], index).intoArray(c1, 0);
+        finalColumn(s2, s3, s0, s1, w[k + 2], index).intoArray(c2, 0);
+        finalColumn(s3, s0, s1, s2, w[k + 3], index).intoArray(c3, 0);
+    }
+
+    /** One output column of a full round: row r is looked up from the r-th argument. */
+    private static IntVector roundColumn(IntVector a, IntVector b, IntVector c, IntVector d, int rk, int[] index) {
+        return gather(AESTables.TE0, a.lanewise(VectorOperators.LSHR, 24), index)
+                .lanewise(VectorOperators.XOR, gather(AESTables.TE1, b.lanewise(VectorOperators.LSHR, 16).and(0xFF), index))
+                .lanewise(VectorOperators.XOR, gather(AESTables.TE2, c.lanewise(VectorOperators.LSHR, 8).and(0xFF), index))
+                .lanewise(VectorOperators.XOR, gather(AESTables.TE3, d.and(0xFF), index))
+                .lanewise(VectorOperators.XOR, rk);
+    }
+
+    /** One output column of the final round (SubBytes+ShiftRows, no MixColumns). */
+    private static IntVector finalColumn(IntVector a, IntVector b, IntVector c, IntVector d, int rk, int[] index) {
+        final int[] s = AES_Constants.S_BOX;
+        return gather(s, a.lanewise(VectorOperators.LSHR, 24), index).lanewise(VectorOperators.LSHL, 24)
+                .or(gather(s, b.lanewise(VectorOperators.LSHR, 16).and(0xFF), index).lanewise(VectorOperators.LSHL, 16))
+                .or(gather(s, c.lanewise(VectorOperators.LSHR, 8).and(0xFF), index).lanewise(VectorOperators.LSHL, 8))
+                .or(gather(s, d.and(0xFF), index))
+                .lanewise(VectorOperators.XOR, rk);
+    }
+
+    /** table[idx] per lane; the Vector API takes gather indices from an int[]. */
+    private static IntVector gather(int[] table, IntVector idx, int[] index) {
+        idx.intoArray(index, 0);
+        return IntVector.fromArray(SPECIES, table, 0, index, 0);
+    }
+}
@@ -0,0 +1,450 @@
+import java.math.BigInteger;
+
+/**
+ * AES_FF1.java
+ * FF1 format-preserving encryption (NIST SP 800-38G Rev. 1) on the fast
+ * AES-128 engine: a numeral string of n digits in radix 2..65536 encrypts
+ * to another numeral string of n digits.
+ *
+ * FF1 is a ten-round Feistel network whose round function is a CBC-MAC
+ * over P || Q. P depends only on the radix and the length, and Q begins
+ * with the tweak; only the last bytes of Q ([i] || NUM(B)) change from
+ * round to round. A Tweak therefore keeps, for each length it has seen,
+ * the CBC-MAC state after P and the constant blocks of Q, so a round costs
+ * one block encryption in the common case.
+ *
+ * Fast path: when radix^ceil(n/2) < 2^55 (decimal strings of up to 32
+ * digits) both halves are kept as longs through all ten rounds and the
+ * PRF output is reduced with long arithmetic. Longer strings fall back to
+ * BigInteger. encryptAll()/decryptAll() work in place on one char buffer
+ * and run up to INTERLEAVE strings through each round together, so the
+ * block encryptions of a batch go through the interleaved kernel and the
+ * batch allocates nothing per item.
+ *
+ * The key schedule is fetched from the AESCipher on every call (a destroyed
+ * cipher throws IllegalStateException); an AES_FF1 and its Tweaks
+ * hold no per-call state and can be shared between threads.
+ */
+public class AES_FF1 {
+
+    public static final int MIN_RADIX = 2;
+    public static final int MAX_RADIX = 1 << 16;
+    /** radix^n must be at least this (SP 800-38G Rev. 1, 5.2). */
+    public static final int MIN_DOMAIN = 1_000_000;
+
+    private static final int FEISTEL_ROUNDS = 10;
+    private static final int LANES = AESFastEngine.INTERLEAVE;
+    private static final int CACHED_LENGTHS = 64; // Tweak keeps prefixes for n <= this
+    private static final int FAST_BITS = 55;      // radix^v below 2^55 keeps (y << 8) in a long
+
+    private final AESCipher cipher; // schedule fetched per call, so a destroyed cipher is refused
+    private final int radix;
+    private final Tweak noTweak;
+
+    public AES_FF1(AESCipher cipher, int radix) {
+        if (radix < MIN_RADIX || radix > MAX_RADIX) {
+            throw new IllegalArgumentException("FF1 radix must be between " + MIN_RADIX + " and " + MAX_RADIX + ".");
+        }
+        this.cipher = cipher;
+        this.radix = radix;
+        this.noTweak = new Tweak(new byte[0]);
+    }
+
+    /** Prepares a tweak for repeated use; keep it as long as the tweak is in use. */
+    public Tweak tweak(byte[] tweak) {
+        return tweak == null || tweak.length == 0 ? noTweak : new Tweak(tweak.clone());
+    }
+
+    /** Encrypts a string of digits (radix <= 36) with the empty tweak. */
+    public String encrypt(String x) {
+        return crypt(x, noTweak, true);
+    }
+
+    public String encrypt(String x, Tweak tweak) {
+        return crypt(x, tweak, true);
+    }
+
+    public String decrypt(String x) {
+        return crypt(x, noTweak, false);
+    }
+
+    public String decrypt(String x, Tweak tweak) {
+        return crypt(x, tweak, false);
+    }
+
+    /** Encrypts the numerals x[off..off+len) (each 0..radix-1) in place. */
+    public void encrypt(int[] x, int off, int len, Tweak tweak) {
+        crypt(x, off, len, tweak, true);
+    }
+
+    public void decrypt(int[] x, int off, int len, Tweak tweak) {
+        crypt(x, off, len, tweak, false);
+    }
+
+    /*
+     * encryptAll:
+     * Tokenizes count digit strings in place, string i being
+     * data[offsets[i]..offsets[i]+lengths[i]), all under one tweak. Every
+     * string is checked before any is changed, so an invalid digit or
+     * length throws IllegalArgumentException with data untouched.
+     */
+    public void encryptAll(char[] data, int[] offsets, int[] lengths, int count, Tweak tweak) {
+        cryptAll(data, offsets, lengths, count, tweak, true);
+    }
+
+    public void decryptAll(char[] data, int[] offsets, int[] lengths, int count, Tweak tweak) {
+        cryptAll(data, offsets, lengths, count, tweak, false);
+    }
+
+    private String crypt(String x, Tweak tweak, boolean encrypt) {
+        char[] c = x.toCharArray();
+        cryptAll(c, new int[] {0}, new int[] {c.length}, 1, tweak, encrypt);
+        return new String(c);
+    }
+
+    private void crypt(int[] x, int off, int len, Tweak tweak, boolean encrypt) {
+        checkTweak(tweak);
+        for (int i = off; i < off + len; i++) {
+            if (x[i] < 0 || x[i] >= radix) {
+                throw new IllegalArgumentException("Numeral " + x[i] + " is out of range for radix " + radix + ".");
+            }
+        }
+        Prefix p = tweak.prefix(len);
+        if (!p.fast) {
+            cryptSlow(x, off, p, encrypt);
+            return;
+        }
+        Lanes lanes = new Lanes();
+        lanes.pre[0] = p;
+        lanes.a[0] = num(x, off, p.u);
+        lanes.b[0] = num(x, off + p.u, p.v);
+        cryptFast(lanes, 1, encrypt);
+        str(lanes.a[0], x, off, p.u);
+        str(lanes.b[0], x, off + p.u, p.v);
+    }
+
+    /*
+     * cryptAll:
+     * Validates the batch, then fills lanes with fast-path strings and runs
+     * them INTERLEAVE at a time; slow-path strings are done one by one.
+     */
+    private void cryptAll(char[] data, int[] offsets, int[] lengths, int count, Tweak tweak, boolean encrypt) {
+        checkTweak(tweak);
+        if (radix > Character.MAX_RADIX) {
+            throw new IllegalArgumentException("Character strings need a radix of at most " + Character.MAX_RADIX + ".");
+        }
+        for (int i = 0; i < count; i++) {
+            tweak.prefix(lengths[i]);
+            for (int j = offsets[i]; j < offsets[i] + lengths[i]; j++) {
+                if (Character.digit(data[j], radix) < 0) {
+                    throw new IllegalArgumentException("'" + data[j] + "' is not a digit in radix " + radix + ".");
+                }
+            }
+        }
+        Lanes lanes = new Lanes();
+        int k = 0;
+        for (int i = 0; i < count; i++) {
+            Prefix p = tweak.prefix(lengths[i]);
+            int off = offsets[i];
+            if (!p.fast) {
+                int[] x = new int[p.n];
+                for (int j = 0; j < p.n; j++) {
+                    x[j] = Character.digit(data[off + j], radix);
+                }
+                cryptSlow(x, 0, p, encrypt);
+                for (int j = 0; j < p.n; j++) {
+                    data[off + j] = Character.forDigit(x[j], radix);
+                }
+                continue;
+            }
+            lanes.item[k] = i;
+            lanes.pre[k] = p;
+            lanes.a[k] = num(data, off, p.u);
+            lanes.b[k] = num(data, off + p.u, p.v);
+            if (++k == LANES) {
+                flush(lanes, k, data, offsets, encrypt);
+                k = 0;
+            }
+        }
+        if (k > 0) {
+            flush(lanes, k, data, offsets, encrypt);
+        }
+    }
+
+    private void flush(Lanes lanes, int k, char[] data, int[] offsets, boolean encrypt) {
+        cryptFast(lanes, k, encrypt);
+        for (int j = 0; j < k; j++) {
+            Prefix p = lanes.pre[j];
+            int off = offsets[lanes.item[j]];
+            str(lanes.a[j], data, off, p.u);
+            str(lanes.b[j], data, off + p.u, p.v);
+        }
+    }
+
+    /*
+     * cryptFast:
+     * The ten Feistel rounds for k strings at once, lane j holding the
+     * halves a[j], b[j] as numbers. Per round each lane's last Q block is
+     * XORed into its precomputed CBC-MAC state, the k blocks are encrypted
+     * together, and the first d bytes of each result give y mod radix^m.
+     */
+    private void cryptFast(Lanes lanes, int k, boolean encrypt) {
+        int[] w = cipher.encryptionSchedule();
+        int[] st = lanes.st;
+        byte[] q = lanes.block;
+        for (int r = 0; r < FEISTEL_ROUNDS; r++) {
+            int round = encrypt ? r : FEISTEL_ROUNDS - 1 - r;
+            for (int j = 0; j < k; j++) {
+                Prefix p = lanes.pre[j];
+                long x = encrypt ? lanes.b[j] : lanes.a[j];
+                System.arraycopy(p.tail, 0, q, 0, AES_Constants.BLOCK_SIZE);
+                q[AES_Constants.BLOCK_SIZE - 1 - p.b] = (byte) round;
+                for (int i = 0; i < p.b; i++) {
+                    q[AES_Constants.BLOCK_SIZE - 1 - i] = (byte) (x >>> (8 * i));
+                }
+                for (int i = 0; i < 4; i++) {
+                    st[4 * j + i] = p.state[i] ^ AES_Utils.loadWord(q, 4 * i);
+                }
+            }
+            AESFastEngine.encryptWords(w, st, 4 * k);
+            for (int j = 0; j < k; j++) {
+                Prefix p = lanes.pre[j];
+                long mod = (round & 1) == 0 ? p.modU : p.modV;
+                int step = (round & 1) == 0 ? p.stepU : p.stepV;
+                long y = 0;
+                for (int i = 0; i < p.d; ) {
+                    for (int end = Math.min(p.d, i + step); i < end; i++) {
+                        y = (y << 8) | ((st[4 * j + (i >> 2)] >>> (24 - 8 * (i & 3))) & 0xFF);
+                    }
+                    y %= mod; // one division per 'step' bytes
+                }
+                if (encrypt) {
+                    long c = lanes.a[j] + y;
+                    lanes.a[j] = lanes.b[j];
+                    lanes.b[j] = c >= mod ? c - mod : c;
+                } else {
+                    long c = lanes.b[j] - y;
+                    lanes.b[j] = lanes.a[j];
+                    lanes.a[j] = c < 0 ? c + mod : c;
+                }
+            }
+        }
+    }
+
+    /* cryptSlow: FF1 with BigInteger halves, for strings whose halves do not fit the fast path. */
+    private void cryptSlow(int[] x, int off, Prefix p, boolean encrypt) {
+        BigInteger r = BigInteger.valueOf(radix);
+        BigInteger a = BigInteger.ZERO;
+        BigInteger b = BigInteger.ZERO;
+        for (int i = 0; i < p.u; i++) {
+            a = a.multiply(r).add(BigInteger.valueOf(x[off + i]));
+        }
+        for (int i = p.u; i < p.n; i++) {
+            b = b.multiply(r).add(BigInteger.valueOf(x[off + i]));
+        }
+        for (int k = 0; k < FEISTEL_ROUNDS; k++) {
+            int round = encrypt ? k : FEISTEL_ROUNDS - 1 - k;
+            BigInteger mod = (round & 1) == 0 ? p.bigU : p.bigV;
+            BigInteger y = prf(p, round, encrypt ? b : a);
+            if (encrypt) {
+                BigInteger c = a.add(y).mod(mod);
+                a = b;
+                b = c;
+            } else {
+                BigInteger c = b.subtract(y).mod(mod);
+                b = a;
+                a = c;
+            }
+        }
+        for (int i = p.u - 1; i >= 0; i--) {
+            BigInteger[] qr = a.divideAndRemainder(r);
+            x[off + i] = qr[1].intValue();
+            a = qr[0];
+        }
+        for (int i = p.n - 1; i >= p.u; i--) {
+            BigInteger[] qr = b.divideAndRemainder(r);
+            x[off + i] = qr[1].intValue();
+            b = qr[0];
+        }
+    }
+
+    /*
+     * prf:
+     * Steps 6.i-6.iv in general: R = CBC-MAC of the remaining Q blocks
+     * from the prefix state, S = R || E(R ^ [1]) || E(R ^ [2]) ... cut to
+     * d bytes, y = NUM(S).
+     */
+    private BigInteger prf(Prefix p, int round, BigInteger x) {
+        int[] w = cipher.encryptionSchedule();
+        byte[] q = p.tail.clone();
+        q[q.length - 1 - p.b] = (byte) round;
+        byte[] num = x.toByteArray(); // big-endian, at most b bytes after a leading sign byte
+        int n = Math.min(num.length, p.b);
+        System.arraycopy(num, num.length - n, q, q.length - n, n);
+        int[] st = p.state.clone();
+        for (int off = 0; off < q.length; off += AES_Constants.BLOCK_SIZE) {
+            for (int i = 0; i < 4; i++) {
+                st[i] ^= AES_Utils.loadWord(q, off + 4 * i);
+            }
+            AESFastEngine.encryptWords(w, st, 4);
+        }
+        int blocks = (p.d + AES_Constants.BLOCK_SIZE - 1) / AES_Constants.BLOCK_SIZE;
+        byte[] s = new byte[blocks * AES_Constants.BLOCK_SIZE];
+        int[] e = new int[4];
+        for (int j = 0; j < blocks; j++) {
+            System.arraycopy(st, 0, e, 0, 4);
+            e[3] ^= j;
+            if (j > 0) {
+                AESFastEngine.encryptWords(w, e, 4);
+            }
+            for (int i = 0; i < 4; i++) {
+                AES_Utils.storeWord(e[i], s, j * AES_Constants.BLOCK_SIZE + 4 * i);
+            }
+        }
+        byte[] sd = new byte[p.d];
+        System.arraycopy(s, 0, sd, 0, p.d);
+        return new BigInteger(1, sd);
+    }
+
+    private long num(char[] x, int off, int len) {
+        long v = 0;
+        for (int i = off; i < off + len; i++) {
+            v = v * radix + Character.digit(x[i], radix);
+        }
+        return v;
+    }
+
+    private long num(int[] x, int off, int len) {
+        long v = 0;
+        for (int i = off; i < off + len; i++) {
+            v = v * radix + x[i];
+        }
+        return v;
+    }
+
+    private void str(long v, char[] x, int off, int len) {
+        for (int i = off + len - 1; i >= off; i--) {
+            x[i] = Character.forDigit((int) (v % radix), radix);
+            v /= radix;
+        }
+    }
+
+    private void str(long v, int[] x, int off, int len) {
+        for (int i = off + len - 1; i >= off; i--) {
+            x[i] = (int) (v % radix);
+            v /= radix;
+        }
+    }
+
+    private void checkTweak(Tweak tweak) {
+        if (tweak == null || tweak.owner() != this) {
+            throw new IllegalArgumentException("Tweak was not prepared by this AES_FF1 instance.");
+        }
+    }
+
+    /*
+     * Tweak:
+     * A tweak prepared for one AES_FF1 (key and radix). The Prefix of each
+     * length up to CACHED_LENGTHS is built on first use and kept; Prefix
+     * has only final fields, so a racing thread either sees a complete one
+     * or builds its own.
+     */
+    public final class Tweak {
+
+        private final byte[] bytes;
+        private final Prefix[] cache = new Prefix[CACHED_LENGTHS + 1];
+
+        private Tweak(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private AES_FF1 owner() {
+            return AES_FF1.this;
+        }
+
+        private Prefix prefix(int n) {
+            if (n >= 0 && n <= CACHED_LENGTHS) {
+                Prefix p = cache[n];
+                if (p == null) {
+                    p = new Prefix(cipher.encryptionSchedule(), radix, bytes, n);
+                    cache[n] = p;
+                }
+                return p;
+            }
+            return new Prefix(cipher.encryptionSchedule(), radix, bytes, n);
+        }
+    }
+
+    /*
+     * Prefix:
+     * Everything about one (key, radix, tweak, length) that does not change
+     * between rounds: u, v, b, d and the moduli of steps 1-4, the CBC-MAC
+     * state after P and the Q blocks before [i] || NUM(B), and those last
+     * blocks of Q with their constant bytes already in place.
+     */
+    private static final class Prefix {
+
+        final int n, u, v, b, d;
+        final boolean fast;
+        final long modU, modV;
+        final int stepU, stepV; // PRF bytes that can be shifted into y < modulus before a reduction
+        final BigInteger bigU, bigV;
+        final int[] state;
+        final byte[] tail;
+
+        Prefix(int[] w, int radix, byte[] tweak, int n) {
+            BigInteger r = BigInteger.valueOf(radix);
+            if (n < 2 || r.pow(n).compareTo(BigInteger.valueOf(MIN_DOMAIN)) < 0) {
+                throw new IllegalArgumentException("FF1 needs at least 2 digits and radix^length >= " + MIN_DOMAIN
+                        + "; got length " + n + " in radix " + radix + ".");
+            }
+            this.n = n;
+            this.u = n / 2;
+            this.v = n - u;
+            this.bigU = r.pow(u);
+            this.bigV = r.pow(v);
+            this.b = (bigV.subtract(BigInteger.ONE).bitLength() + 7) / 8;
+            this.d = 4 * ((b + 3) / 4) + 4;
+            this.fast = bigV.bitLength() <= FAST_BITS;
+            this.modU = fast ? bigU.longValueExact() : 0;
+            this.modV = fast ? bigV.longValueExact() : 0;
+            this.stepU = (63 - bigU.bitLength()) / 8;
+            this.stepV = (63 - bigV.bitLength()) / 8;
+
+            int t = tweak.length;
+            byte[] pBlock = {1, 2, 1, (byte) (radix >>> 16), (byte) (radix >>> 8), (byte) radix, 10, (byte) u,
+                             (byte) (n >>> 24), (byte) (n >>> 16), (byte) (n >>> 8), (byte) n,
+                             (byte) (t >>> 24), (byte) (t >>> 16), (byte) (t >>> 8), (byte) t};
+            int pad = Math.floorMod(-t - b - 1, AES_Constants.BLOCK_SIZE);
+            int qLen = t + pad + 1 + b;
+            int tailLen = AES_Constants.BLOCK_SIZE * ((1 + b + AES_Constants.BLOCK_SIZE - 1) / AES_Constants.BLOCK_SIZE);
+            byte[] q = new byte[qLen];
+            System.arraycopy(tweak, 0, q, 0, t);
+
+            this.state = new int[4];
+            cbc(w, state, pBlock, 0);
+            for (int off = 0; off < qLen - tailLen; off += AES_Constants.BLOCK_SIZE) {
+                cbc(w, state, q, off);
+            }
+            this.tail = new byte[tailLen];
+            System.arraycopy(q, qLen - tailLen, tail, 0, tailLen);
+        }
+
+        private static void cbc(int[] w, int[] st, byte[] block, int off) {
+            for (int i = 0; i < 4; i++) {
+                st[i] ^= AES_Utils.loadWord(block, off + 4 * i);
+            }
+            AESFastEngine.encryptWords(w, st, 4);
+        }
+    }
+
+    /* Lanes: scratch for one call; the batch reuses it for every group of strings. */
+    private static final class Lanes {
+        final int[] item = new int[LANES];
+        final Prefix[] pre = new Prefix[LANES];
+        final long[] a = new long[LANES];
+        final long[] b = new long[LANES];
+        final int[] st = new int[4 * LANES];
+        final byte[] block = new byte[AES_Constants.BLOCK_SIZE];
+    }
+}
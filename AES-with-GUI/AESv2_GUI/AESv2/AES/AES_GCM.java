@@ -0,0 +1,191 @@
+import javax.crypto.AEADBadTagException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * AES_GCM.java
+ * Galois/Counter Mode authenticated encryption on the fast AES-128 engine (NIST SP 800-38D).
+ *
+ * The hash key H = E_K(0^128) and its GHASH multiplication table (4-bit or
+ * 8-bit Shoup table, see GHash) are computed once per key in the constructor.
+ * The keystream is AES_CTR with a 32-bit counter starting at inc32(J0), so
+ * large update() calls are split across the ForkJoinPool by AES_CTR; GHASH
+ * itself is serial.
+ *
+ * Streaming use:
+ *   gcm.init(encrypt, iv); gcm.updateAAD(...); gcm.update(...)...; gcm.doFinal(tag, 0);
+ * For encryption doFinal writes the 16-byte tag. For decryption it compares
+ * the expected tag and throws AEADBadTagException on mismatch. update() has
+ * already returned plaintext by then, so a caller must discard it when
+ * doFinal fails.
+ */
+public class AES_GCM {
+
+    public static final int TAG_LENGTH = 16;
+    /** Longest plaintext per message, 2^39 - 256 bits (NIST SP 800-38D 5.2.1.1). */
+    public static final long MAX_DATA_LENGTH = (1L << 36) - 32;
+
+    private final AESCipher cipher;
+    private final GHash ghash;
+
+    private boolean encrypt;
+    private boolean initialized;
+    private final byte[] j0 = new byte[AES_Constants.BLOCK_SIZE];
+    private AES_CTR ctr;
+    private long aadLength;
+    private long dataLength;
+    private boolean dataStarted; // AAD is closed (padded) once update() was called, even with len 0
+
+    /** Uses the 8-bit (4 KiB) GHASH table. */
+    public AES_GCM(AESCipher cipher) {
+        this(cipher, 8);
+    }
+
+    /** ghashTableBits selects the 4-bit (256-byte) or 8-bit (4 KiB) GHASH table. */
+    public AES_GCM(AESCipher cipher, int ghashTableBits) {
+        this.cipher = cipher;
+        byte[] h = new byte[AES_Constants.BLOCK_SIZE];
+        cipher.encryptBlock(h, 0, h, 0);
+        this.ghash = new GHash(h, ghashTableBits);
+    }
+
+    /*
+     * init:
+     * Starts a message. A 12-byte IV gives J0 = IV || 0^31 || 1; any other
+     * length is hashed with GHASH as the standard requires. An IV must never
+     * be reused with the same key.
+     */
+    public void init(boolean encrypt, byte[] iv) {
+        if (iv == null || iv.length == 0) {
+            throw new IllegalArgumentException("GCM IV must not be empty.");
+        }
+        this.encrypt = encrypt;
+        ghash.reset();
+        if (iv.length == 12) {
+            System.arraycopy(iv, 0, j0, 0, 12);
+            j0[12] = 0;
+            j0[13] = 0;
+            j0[14] = 0;
+            j0[15] = 1;
+        } else {
+            ghash.update(iv, 0, iv.length);
+            ghash.lengths(0, iv.length);
+            ghash.digest(j0, 0);
+            ghash.reset();
+        }
+
+        byte[] counter = j0.clone();
+        AES_Utils.storeWord(AES_Utils.loadWord(counter, 12) + 1, counter, 12);
+        ctr = new AES_CTR(cipher, counter, 32);
+        aadLength = 0;
+        dataLength = 0;
+        dataStarted = false;
+        initialized = true;
+    }
+
+    /** Adds associated data; all AAD must come before the first update(). */
+    public void updateAAD(byte[] aad, int off, int len) {
+        checkInitialized();
+        if (dataStarted) {
+            throw new IllegalStateException("AAD must be supplied before any data.");
+        }
+        ghash.update(aad, off, len);
+        aadLength += len;
+    }
+
+    /*
+     * update:
+     * Encrypts or decrypts len bytes into out; returns len. In-place is
+     * allowed. Throws IllegalStateException, before touching any data, once
+     * the message would exceed MAX_DATA_LENGTH, where the 32-bit counter
+     * would wrap.
+     */
+    public int update(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        checkInitialized();
+        if (len > MAX_DATA_LENGTH - dataLength) {
+            throw new IllegalStateException("GCM message longer than " + MAX_DATA_LENGTH + " bytes.");
+        }
+        if (!dataStarted) {
+            ghash.pad(); // end of AAD
+            dataStarted = true;
+        }
+        if (encrypt) {
+            ctr.updateParallel(in, inOff, len, out, outOff);
+            ghash.update(out, outOff, len);
+        } else {
+            ghash.update(in, inOff, len);
+            ctr.updateParallel(in, inOff, len, out, outOff);
+        }
+        dataLength += len;
+        return len;
+    }
+
+    /*
+     * doFinal:
+     * Encryption: writes the tag into tag[tagOff..tagOff+15].
+     * Decryption: checks tag[tagOff..tagOff+15] in constant time.
+     * Either way the object needs a new init() before the next message.
+     */
+    public void doFinal(byte[] tag, int tagOff) throws AEADBadTagException {
+        checkInitialized();
+        initialized = false;
+
+        byte[] s = new byte[AES_Constants.BLOCK_SIZE];
+        ghash.lengths(aadLength, dataLength);
+        ghash.digest(s, 0);
+        byte[] ej0 = new byte[AES_Constants.BLOCK_SIZE];
+        cipher.encryptBlock(j0, 0, ej0, 0);
+        for (int i = 0; i < TAG_LENGTH; i++) {
+            s[i] ^= ej0[i];
+        }
+
+        if (encrypt) {
+            System.arraycopy(s, 0, tag, tagOff, TAG_LENGTH);
+            return;
+        }
+        byte[] expected = new byte[TAG_LENGTH];
+        System.arraycopy(tag, tagOff, expected, 0, TAG_LENGTH);
+        if (!MessageDigest.isEqual(s, expected)) {
+            throw new AEADBadTagException("GCM tag mismatch.");
+        }
+    }
+
+    /** One-shot encryption: returns ciphertext || tag. */
+    public byte[] encrypt(byte[] iv, byte[] aad, byte[] plaintext) {
+        init(true, iv);
+        if (aad != null) updateAAD(aad, 0, aad.length);
+        byte[] out = new byte[plaintext.length + TAG_LENGTH];
+        update(plaintext, 0, plaintext.length, out, 0);
+        try {
+            doFinal(out, plaintext.length);
+        } catch (AEADBadTagException e) {
+            throw new IllegalStateException(e); // not thrown when encrypting
+        }
+        return out;
+    }
+
+    /** One-shot decryption of ciphertext || tag; nothing is returned if the tag is wrong. */
+    public byte[] decrypt(byte[] iv, byte[] aad, byte[] ciphertextAndTag) throws AEADBadTagException {
+        if (ciphertextAndTag.length < TAG_LENGTH) {
+            throw new AEADBadTagException("Input shorter than the GCM tag.");
+        }
+        int len = ciphertextAndTag.length - TAG_LENGTH;
+        init(false, iv);
+        if (aad != null) updateAAD(aad, 0, aad.length);
+        byte[] out = new byte[len];
+        update(ciphertextAndTag, 0, len, out, 0);
+        try {
+            doFinal(ciphertextAndTag, len);
+        } catch (AEADBadTagException e) {
+            Arrays.fill(out, (byte) 0);
+            throw e;
+        }
+        return out;
+    }
+
+    private void checkInitialized() {
+        if (!initialized) {
+            throw new IllegalStateException("GCM not initialized: call init() for each message.");
+        }
+    }
+}
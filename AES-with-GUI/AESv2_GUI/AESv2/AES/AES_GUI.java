@@ -12,6 +12,7 @@ public class AES_GUI extends JFrame {
     private JTextField keyField;
     private JTextArea outputArea;
     private JTextArea logArea;
+    private JCheckBox fastEngineBox;
 
     public AES_GUI() {
         setTitle("AES-128 Encryption/Decryption");
@@ -54,6 +55,9 @@ public class AES_GUI extends JFrame {
         buttonPanel.add(decryptButton);
         buttonPanel.add(clearButton);
 
+        fastEngineBox = new JCheckBox("Fast T-table engine (no trace)");
+        buttonPanel.add(fastEngineBox);
+
         mainPanel.add(buttonPanel);
         mainPanel.add(Box.createVerticalStrut(10));
 
@@ -85,6 +89,8 @@ public class AES_GUI extends JFrame {
         PrintStream printStream = new PrintStream(new CustomOutputStream(logArea));
         System.setOut(printStream);
 
+        fastEngineBox.addActionListener(e -> AES_128.setEngine(
+                fastEngineBox.isSelected() ? AES_128.Engine.T_TABLE : AES_128.Engine.REFERENCE));
         encryptButton.addActionListener(e -> performEncryption());
         decryptButton.addActionListener(e -> performDecryption());
         clearButton.addActionListener(e -> logArea.setText(""));
@@ -118,7 +124,9 @@ public class AES_GUI extends JFrame {
                 return;
             }
 
-            int[] expandedKey = KeyExpansion.expandKey(keyBytes);
+            // fast engine: one reusable context, no per-block allocation or trace
+            AESCipher cipher = fastEngineBox.isSelected() ? KeyScheduleCache.SHARED.get(keyBytes) : null;
+            int[] expandedKey = cipher == null ? KeyExpansion.expandKey(keyBytes) : null;
 
             System.out.println("\n--- Starting Encryption ---");
             System.out.println("Plaintext: " + plaintext);
@@ -141,11 +149,19 @@ public class AES_GUI extends JFrame {
                     }
                 }
 
+                if (cipher != null) {
+                    cipher.encryptBlock(block, 0, cipherBytes, i * 16);
+                    continue;
+                }
+
                 AESLogger.setContext("ENC", i + 1);
                 byte[] encryptedBlock = AES_128.encryptBlock(block, expandedKey);
                 System.arraycopy(encryptedBlock, 0, cipherBytes, i * 16, 16);
                 AESLogger.clearContext();
             }
+            if (cipher != null) {
+                cipher.destroy(); // our copy of the cached schedules
+            }
 
             String cipherHex = AES_Utils.bytesToHex(cipherBytes);
             outputArea.setText(cipherHex);
@@ -200,7 +216,8 @@ public class AES_GUI extends JFrame {
                 return;
             }
 
-            int[] expandedKey = KeyExpansion.expandKey(keyBytes);
+            AESCipher cipher = fastEngineBox.isSelected() ? KeyScheduleCache.SHARED.get(keyBytes) : null;
+            int[] expandedKey = cipher == null ? KeyExpansion.expandKey(keyBytes) : null;
             byte[] cipherBytes = AES_Utils.hexToBytes(cipherHex, cipherHex.length() / 2);
 
             System.out.println("\n--- Starting Decryption ---");
@@ -210,6 +227,11 @@ public class AES_GUI extends JFrame {
             byte[] decryptedPaddedBytes = new byte[cipherBytes.length];
 
             for (int i = 0; i < totalBlocks; i++) {
+                if (cipher != null) {
+                    cipher.decryptBlock(cipherBytes, i * 16, decryptedPaddedBytes, i * 16);
+                    continue;
+                }
+
                 byte[] block = Arrays.copyOfRange(cipherBytes, i * 16, (i + 1) * 16);
 
                 AESLogger.setContext("DEC", i + 1);
@@ -217,6 +239,9 @@ public class AES_GUI extends JFrame {
                 System.arraycopy(decryptedBlock, 0, decryptedPaddedBytes, i * 16, 16);
                 AESLogger.clearContext();
             }
+            if (cipher != null) {
+                cipher.destroy();
+            }
 
             StringBuilder recovered = new StringBuilder();
             for (byte b : decryptedPaddedBytes) {
@@ -234,7 +259,7 @@ public class AES_GUI extends JFrame {
     }
 
     private boolean isHex(String s) {
-        return s != null && s.matches("(?i)^[0-9a-f]+$");
+        return HexCodec.isHex(s);
     }
 
     private class CustomOutputStream extends OutputStream {
@@ -0,0 +1,245 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * AES_MMO.java
+ * 128-bit hash from AES-128 with the Matyas-Meyer-Oseas construction, and
+ * a parallel tree mode for fingerprinting large blobs.
+ *
+ * Compression: H_i = E_{H_(i-1)}(m_i) XOR m_i, starting from H_0 = 0, so the
+ * chaining value is the AES key and every block needs a key expansion
+ * (done in place with KeyExpansion.expandKey(int[])). The message is padded
+ * Merkle-Damgard style: 0x80, zeros, then the bit length as 8 big-endian
+ * bytes, to a multiple of 16 bytes.
+ *
+ * The digest is 128 bits, so collisions cost about 2^64 work: enough to
+ * tell blobs apart for deduplication, not a replacement for SHA-256 where
+ * an adversary chooses the inputs.
+ *
+ * Tree mode (treeHash): the input is cut into leafSize leaves, hashed on a
+ * ForkJoinPool, then combined pairwise up to the root (an odd node moves up
+ * unchanged). Every hash input starts with a 16-byte domain block naming
+ * its role, so leaves, inner nodes and the root never collide with each
+ * other:
+ *   leaf   MMO(00 .. 00 || leaf bytes)
+ *   inner  MMO(01 00 .. 00 || left || right)
+ *   root   MMO(02 00 00 00 | leaf size (4) | total length (8) || top node)
+ * A tree digest therefore differs from the plain digest of the same bytes,
+ * and from tree digests with another leaf size.
+ */
+public class AES_MMO {
+
+    public static final int DIGEST_LENGTH = AES_Constants.BLOCK_SIZE;
+    /** Leaf size of the tree mode: one AESParallel chunk (256 KiB). */
+    public static final int DEFAULT_LEAF_SIZE = AESParallel.CHUNK_BLOCKS * AES_Constants.BLOCK_SIZE;
+
+    private static final int LEAF = 0, INNER = 1, ROOT = 2;
+
+    private final int[] h = new int[4];
+    private final int[] w = new int[AES_Constants.TOTAL_WORDS];
+    private final int[] st = new int[4];
+    private final byte[] buf = new byte[AES_Constants.BLOCK_SIZE];
+    private int bufLen;
+    private long length;
+
+    /** One-shot plain (non-tree) digest. */
+    public static byte[] hash(byte[] data) {
+        AES_MMO mmo = new AES_MMO();
+        mmo.update(data, 0, data.length);
+        return mmo.digest();
+    }
+
+    public void update(byte[] in, int off, int len) {
+        length += len;
+        if (bufLen > 0) {
+            int n = Math.min(len, AES_Constants.BLOCK_SIZE - bufLen);
+            System.arraycopy(in, off, buf, bufLen, n);
+            bufLen += n;
+            off += n;
+            len -= n;
+            if (bufLen < AES_Constants.BLOCK_SIZE) {
+                return;
+            }
+            compress(buf, 0);
+            bufLen = 0;
+        }
+        while (len >= AES_Constants.BLOCK_SIZE) {
+            compress(in, off);
+            off += AES_Constants.BLOCK_SIZE;
+            len -= AES_Constants.BLOCK_SIZE;
+        }
+        System.arraycopy(in, off, buf, 0, len);
+        bufLen = len;
+    }
+
+    /** Pads, returns the 16-byte digest and resets for the next message. */
+    public byte[] digest() {
+        byte[] out = new byte[DIGEST_LENGTH];
+        digest(out, 0);
+        return out;
+    }
+
+    public void digest(byte[] out, int off) {
+        long bits = length << 3;
+        buf[bufLen++] = (byte) 0x80;
+        if (bufLen > AES_Constants.BLOCK_SIZE - 8) {
+            Arrays.fill(buf, bufLen, AES_Constants.BLOCK_SIZE, (byte) 0);
+            compress(buf, 0);
+            bufLen = 0;
+        }
+        Arrays.fill(buf, bufLen, AES_Constants.BLOCK_SIZE - 8, (byte) 0);
+        for (int i = 0; i < 8; i++) {
+            buf[AES_Constants.BLOCK_SIZE - 1 - i] = (byte) (bits >>> (8 * i));
+        }
+        compress(buf, 0);
+        for (int i = 0; i < 4; i++) {
+            AES_Utils.storeWord(h[i], out, off + 4 * i);
+        }
+        reset();
+    }
+
+    public void reset() {
+        Arrays.fill(h, 0);
+        Arrays.fill(buf, (byte) 0);
+        bufLen = 0;
+        length = 0;
+    }
+
+    /** treeHash over data[off..off+len) with DEFAULT_LEAF_SIZE leaves. */
+    public static byte[] treeHash(ForkJoinPool pool, byte[] data, int off, int len) {
+        return treeHash(pool, data, off, len, DEFAULT_LEAF_SIZE);
+    }
+
+    /*
+     * treeHash:
+     * Leaves are hashed in parallel (one leaf per fork-join task), the inner
+     * levels, three blocks per node, on the calling thread.
+     */
+    public static byte[] treeHash(ForkJoinPool pool, byte[] data, int off, int len, int leafSize) {
+        checkLeafSize(leafSize);
+        int leaves = leafCount(len, leafSize);
+        byte[] nodes = new byte[leaves * DIGEST_LENGTH];
+        AESParallel.forEachChunk(pool, leaves, 1, (from, to) -> {
+            AES_MMO mmo = new AES_MMO();
+            for (int i = from; i < to; i++) {
+                int start = i * leafSize;
+                mmo.leaf(data, off + start, Math.min(leafSize, len - start), nodes, i * DIGEST_LENGTH);
+            }
+        });
+        return root(nodes, leaves, leafSize, len);
+    }
+
+    /*
+     * treeHash (FileChannel):
+     * Same digest as treeHash over the whole file content. Each task reads
+     * its leaves with positional reads into its own leafSize buffer, so
+     * memory stays at one leaf per worker.
+     */
+    public static byte[] treeHash(ForkJoinPool pool, FileChannel ch, int leafSize) throws IOException {
+        checkLeafSize(leafSize);
+        long size = ch.size();
+        int leaves = leafCount(size, leafSize);
+        byte[] nodes = new byte[leaves * DIGEST_LENGTH];
+        IOException[] failure = new IOException[1];
+        AESParallel.forEachChunk(pool, leaves, 1, (from, to) -> {
+            AES_MMO mmo = new AES_MMO();
+            byte[] leaf = new byte[leafSize];
+            for (int i = from; i < to; i++) {
+                long start = (long) i * leafSize;
+                int n = (int) Math.min(leafSize, size - start);
+                try {
+                    ByteBuffer b = ByteBuffer.wrap(leaf, 0, n);
+                    while (b.hasRemaining()) {
+                        if (ch.read(b, start + b.position()) < 0) {
+                            throw new IOException("File shrank while hashing.");
+                        }
+                    }
+                } catch (IOException e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                    return;
+                }
+                mmo.leaf(leaf, 0, n, nodes, i * DIGEST_LENGTH);
+            }
+        });
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        return root(nodes, leaves, leafSize, size);
+    }
+
+    /* compress: one MMO step, H = E_H(m) XOR m, with the schedule expanded in place. */
+    private void compress(byte[] in, int off) {
+        w[0] = h[0];
+        w[1] = h[1];
+        w[2] = h[2];
+        w[3] = h[3];
+        KeyExpansion.expandKey(w);
+        for (int i = 0; i < 4; i++) {
+            st[i] = AES_Utils.loadWord(in, off + 4 * i);
+        }
+        AESFastEngine.encryptWords(w, st, 4);
+        for (int i = 0; i < 4; i++) {
+            h[i] = st[i] ^ AES_Utils.loadWord(in, off + 4 * i);
+        }
+    }
+
+    private void leaf(byte[] data, int off, int len, byte[] out, int outOff) {
+        update(domainBlock(LEAF, 0, 0), 0, AES_Constants.BLOCK_SIZE);
+        update(data, off, len);
+        digest(out, outOff);
+    }
+
+    /* root: combines the level of leaf digests pairwise, then hashes the top with the root block. */
+    private static byte[] root(byte[] nodes, int count, int leafSize, long totalLength) {
+        AES_MMO mmo = new AES_MMO();
+        byte[] inner = domainBlock(INNER, 0, 0);
+        while (count > 1) {
+            int parents = (count + 1) / 2;
+            for (int p = 0; p < parents; p++) {
+                int left = 2 * p * DIGEST_LENGTH;
+                if (2 * p + 1 == count) {
+                    System.arraycopy(nodes, left, nodes, p * DIGEST_LENGTH, DIGEST_LENGTH); // odd node moves up
+                    continue;
+                }
+                mmo.update(inner, 0, AES_Constants.BLOCK_SIZE);
+                mmo.update(nodes, left, 2 * DIGEST_LENGTH);
+                mmo.digest(nodes, p * DIGEST_LENGTH);
+            }
+            count = parents;
+        }
+        mmo.update(domainBlock(ROOT, leafSize, totalLength), 0, AES_Constants.BLOCK_SIZE);
+        mmo.update(nodes, 0, DIGEST_LENGTH);
+        return mmo.digest();
+    }
+
+    private static byte[] domainBlock(int type, int leafSize, long totalLength) {
+        byte[] b = new byte[AES_Constants.BLOCK_SIZE];
+        b[0] = (byte) type;
+        AES_Utils.storeWord(leafSize, b, 4);
+        AES_Utils.storeWord((int) (totalLength >>> 32), b, 8);
+        AES_Utils.storeWord((int) totalLength, b, 12);
+        return b;
+    }
+
+    /** Number of leaves (at least one) for length bytes; rounds up without overflowing. */
+    private static int leafCount(long length, int leafSize) {
+        long count = Math.max(1, length / leafSize + (length % leafSize != 0 ? 1 : 0));
+        if (count > Integer.MAX_VALUE / DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Input has too many leaves for leaf size " + leafSize + ".");
+        }
+        return (int) count;
+    }
+
+    private static void checkLeafSize(int leafSize) {
+        if (leafSize < AES_Constants.BLOCK_SIZE) {
+            throw new IllegalArgumentException("Leaf size must be at least " + AES_Constants.BLOCK_SIZE + " bytes.");
+        }
+    }
+}
@@ -1,3 +1,9 @@
+import java.io.Console;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 
 /**
@@ -8,11 +14,7 @@ public class AES_Utils {
 
     /** Converts a byte array to its hexadecimal string representation. */
     public static String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b & 0xFF));
-        }
-        return sb.toString();
+        return HexCodec.encode(bytes);
     }
 
     /** Hex string to byte array converter, with key validation. */
@@ -25,14 +27,86 @@ public class AES_Utils {
         }
 
         byte[] bytes = new byte[expectedLength];
-        for (int i = 0; i < bytes.length; i++) {
-            int index = i * 2;
-            int v = Integer.parseInt(hex.substring(index, index + 2), 16);
-            bytes[i] = (byte) v;
-        }
+        HexCodec.decode(hex, 0, hex.length(), bytes, 0);
         return bytes;
     }
 
+    /*
+     * readKey:
+     * Reads a hex key from a key source rather than from the command line,
+     * where it would show up in ps and in the shell history:
+     *   env:NAME   the environment variable NAME
+     *   file:PATH  the contents of the file PATH
+     *   -          a line from standard input (not echoed on a console)
+     * Surrounding whitespace is ignored; the key must have expectedLength bytes.
+     */
+    public static byte[] readKey(String source, int expectedLength) throws IOException {
+        char[] hex;
+        if (source.startsWith("env:")) {
+            String value = System.getenv(source.substring(4));
+            if (value == null) {
+                throw new IllegalArgumentException("Key handling: environment variable " + source.substring(4) + " is not set.");
+            }
+            hex = value.toCharArray();
+        } else if (source.startsWith("file:")) {
+            byte[] raw = Files.readAllBytes(Paths.get(source.substring(5)));
+            hex = new char[raw.length];
+            for (int i = 0; i < raw.length; i++) {
+                hex[i] = (char) (raw[i] & 0xFF);
+            }
+            Arrays.fill(raw, (byte) 0);
+        } else if (source.equals("-")) {
+            Console console = System.console();
+            hex = console != null ? console.readPassword("Key (hex): ") : readLine(System.in);
+            if (hex == null) {
+                throw new IllegalArgumentException("Key handling: no key on standard input.");
+            }
+        } else {
+            throw new IllegalArgumentException(
+                    "Key handling: pass the key as env:NAME, file:PATH or - (standard input), not on the command line.");
+        }
+        try {
+            int start = 0, end = hex.length;
+            while (start < end && Character.isWhitespace(hex[start])) start++;
+            while (end > start && Character.isWhitespace(hex[end - 1])) end--;
+            if (end - start != expectedLength * 2) {
+                throw new IllegalArgumentException(
+                        "Key handling: Key must be " + (expectedLength * 2) +
+                                " hexadecimal characters (" + expectedLength * 8 + " bits). Please try again."
+                );
+            }
+            byte[] bytes = new byte[expectedLength];
+            HexCodec.decode(hex, start, end - start, bytes, 0);
+            return bytes;
+        } finally {
+            Arrays.fill(hex, '\0');
+        }
+    }
+
+    /** Reads one line from in byte by byte, so nothing past it is consumed; null at end of input. */
+    private static char[] readLine(InputStream in) throws IOException {
+        char[] line = new char[64];
+        int n = 0, b;
+        while ((b = in.read()) >= 0 && b != '\n') {
+            if (n == line.length) {
+                char[] grown = Arrays.copyOf(line, 2 * n);
+                Arrays.fill(line, '\0');
+                line = grown;
+            }
+            line[n++] = (char) b;
+        }
+        char[] result = b < 0 && n == 0 ? null : Arrays.copyOf(line, n);
+        Arrays.fill(line, '\0');
+        return result;
+    }
+
+    /** Refuses to run when output is the input file, which opening the output would truncate. */
+    public static void requireDistinct(Path input, Path output) throws IOException {
+        if (Files.exists(output) && Files.isSameFile(input, output)) {
+            throw new IllegalArgumentException("Output " + output + " is the input file.");
+        }
+    }
+
     /** Converts a word (int) to a byte array (MSB first). */
     public static byte[] wordToBytes(int word) {
         byte[] bytes = new byte[4];
@@ -51,6 +125,22 @@ public class AES_Utils {
                 (bytes[3] & 0xFF);
     }
 
+    /** Reads the big-endian word at bytes[off..off+3] without allocating. */
+    public static int loadWord(byte[] bytes, int off) {
+        return ((bytes[off] & 0xFF) << 24) |
+                ((bytes[off + 1] & 0xFF) << 16) |
+                ((bytes[off + 2] & 0xFF) << 8) |
+                (bytes[off + 3] & 0xFF);
+    }
+
+    /** Writes a word MSB first into bytes[off..off+3] without allocating. */
+    public static void storeWord(int word, byte[] bytes, int off) {
+        bytes[off] = (byte) (word >>> 24);
+        bytes[off + 1] = (byte) (word >>> 16);
+        bytes[off + 2] = (byte) (word >>> 8);
+        bytes[off + 3] = (byte) word;
+    }
+
     /** Converts a 16-byte array into a 4x4 State matrix (column-major order). */
     public static byte[][] bytesToState(byte[] bytes) {
         byte[][] state = new byte[4][4];
@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * AES_XTS.java
+ * XTS-AES-128 (IEEE 1619 / NIST SP 800-38E) for sector-addressed storage.
+ *
+ * The 32-byte key is two AES-128 keys: K1 encrypts the data and K2 encrypts
+ * the sector number (a 128-bit little-endian data unit number) into the
+ * initial tweak. Each following block of the sector uses the previous tweak
+ * times alpha in GF(2^128). A sector whose length is not a multiple of 16
+ * (but at least 16) uses ciphertext stealing, so ciphertext and plaintext
+ * always have the same length.
+ *
+ * Sectors are independent: encryptSectors/decryptSectors split a run of
+ * sectors across a ForkJoinPool, and readSectors/writeSectors touch only
+ * the addressed sectors of a FileChannel, so one 4 KiB sector can be
+ * rewritten without reading or re-encrypting anything else.
+ */
+public class AES_XTS {
+
+    private final AESCipher dataKey;
+    private final AESCipher tweakKey;
+
+    /** key is K1 || K2, 32 bytes; the halves must differ (SP 800-38E). */
+    public AES_XTS(byte[] key) {
+        if (key == null || key.length != 32) {
+            throw new IllegalArgumentException("XTS-AES-128 key must be 32 bytes (two AES-128 keys).");
+        }
+        byte[] k1 = Arrays.copyOfRange(key, 0, 16);
+        byte[] k2 = Arrays.copyOfRange(key, 16, 32);
+        if (Arrays.equals(k1, k2)) {
+            throw new IllegalArgumentException("XTS data key and tweak key must be different.");
+        }
+        this.dataKey = new AESCipher(k1);
+        this.tweakKey = new AESCipher(k2);
+        Arrays.fill(k1, (byte) 0);
+        Arrays.fill(k2, (byte) 0);
+    }
+
+    /** Uses two existing contexts (data key K1, tweak key K2). */
+    public AES_XTS(AESCipher dataKey, AESCipher tweakKey) {
+        this.dataKey = dataKey;
+        this.tweakKey = tweakKey;
+    }
+
+    /** Encrypts one sector of len >= 16 bytes; in-place is allowed. */
+    public void encryptSector(long sector, byte[] in, int inOff, int len, byte[] out, int outOff) {
+        cryptSector(true, sector, in, inOff, len, out, outOff, new byte[tweakBufferSize(len)]);
+    }
+
+    /** Decrypts one sector of len >= 16 bytes; in-place is allowed. */
+    public void decryptSector(long sector, byte[] in, int inOff, int len, byte[] out, int outOff) {
+        cryptSector(false, sector, in, inOff, len, out, outOff, new byte[tweakBufferSize(len)]);
+    }
+
+    /** encryptSectors on the common pool. */
+    public void encryptSectors(long firstSector, int sectorSize, byte[] in, int inOff, int len, byte[] out, int outOff) {
+        cryptSectors(ForkJoinPool.commonPool(), true, firstSector, sectorSize, in, inOff, len, out, outOff);
+    }
+
+    /** decryptSectors on the common pool. */
+    public void decryptSectors(long firstSector, int sectorSize, byte[] in, int inOff, int len, byte[] out, int outOff) {
+        cryptSectors(ForkJoinPool.commonPool(), false, firstSector, sectorSize, in, inOff, len, out, outOff);
+    }
+
+    /*
+     * encryptSectors:
+     * Encrypts consecutive sectors firstSector, firstSector + 1, ... of
+     * sectorSize bytes each; the last one may be shorter (but >= 16 bytes).
+     * Sectors are spread over the pool in chunks of about AESParallel's
+     * chunk size in bytes.
+     */
+    public void encryptSectors(ForkJoinPool pool, long firstSector, int sectorSize,
+                               byte[] in, int inOff, int len, byte[] out, int outOff) {
+        cryptSectors(pool, true, firstSector, sectorSize, in, inOff, len, out, outOff);
+    }
+
+    public void decryptSectors(ForkJoinPool pool, long firstSector, int sectorSize,
+                               byte[] in, int inOff, int len, byte[] out, int outOff) {
+        cryptSectors(pool, false, firstSector, sectorSize, in, inOff, len, out, outOff);
+    }
+
+    /*
+     * readSectors:
+     * Reads count sectors starting at firstSector (file offset
+     * firstSector * sectorSize) and decrypts them into out[outOff..].
+     */
+    public void readSectors(FileChannel ch, int sectorSize, long firstSector, int count,
+                            byte[] out, int outOff) throws IOException {
+        int len = Math.multiplyExact(sectorSize, count);
+        ByteBuffer buf = ByteBuffer.wrap(out, outOff, len);
+        long pos = firstSector * sectorSize;
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos + (buf.position() - outOff));
+            if (n < 0) {
+                throw new IOException("Sector " + (firstSector + (buf.position() - outOff) / sectorSize) + " is past the end of the volume.");
+            }
+        }
+        decryptSectors(firstSector, sectorSize, out, outOff, len, out, outOff);
+    }
+
+    /*
+     * writeSectors:
+     * Encrypts count sectors of plaintext from in[inOff..] and writes them at
+     * sector firstSector of the channel. Other sectors are not touched.
+     */
+    public void writeSectors(FileChannel ch, int sectorSize, long firstSector, int count,
+                             byte[] in, int inOff) throws IOException {
+        int len = Math.multiplyExact(sectorSize, count);
+        byte[] ct = new byte[len];
+        encryptSectors(firstSector, sectorSize, in, inOff, len, ct, 0);
+        ByteBuffer buf = ByteBuffer.wrap(ct);
+        long pos = firstSector * sectorSize;
+        while (buf.hasRemaining()) {
+            ch.write(buf, pos + buf.position());
+        }
+    }
+
+    private void cryptSectors(ForkJoinPool pool, boolean encrypt, long firstSector, int sectorSize,
+                              byte[] in, int inOff, int len, byte[] out, int outOff) {
+        if (sectorSize < AES_Constants.BLOCK_SIZE) {
+            throw new IllegalArgumentException("Sector size must be at least " + AES_Constants.BLOCK_SIZE + " bytes.");
+        }
+        int nSectors = (len + sectorSize - 1) / sectorSize;
+        if (len > 0 && len - (nSectors - 1) * sectorSize < AES_Constants.BLOCK_SIZE) {
+            throw new IllegalArgumentException("The last sector must be at least " + AES_Constants.BLOCK_SIZE + " bytes.");
+        }
+        int chunk = Math.max(1, AESParallel.CHUNK_BLOCKS * AES_Constants.BLOCK_SIZE / sectorSize);
+        AESParallel.forEachChunk(pool, nSectors, chunk, (from, to) -> {
+            byte[] tw = new byte[tweakBufferSize(sectorSize)];
+            for (int s = from; s < to; s++) {
+                int off = s * sectorSize;
+                int n = Math.min(sectorSize, len - off);
+                cryptSector(encrypt, firstSector + s, in, inOff + off, n, out, outOff + off, tw);
+            }
+        });
+    }
+
+    private static int tweakBufferSize(int len) {
+        return (len / AES_Constants.BLOCK_SIZE + 1) * AES_Constants.BLOCK_SIZE;
+    }
+
+    /*
+     * cryptSector:
+     * tw is scratch for the tweaks T_0..T_m of the sector. Full blocks are
+     * whitened with their tweak, run through the interleaved ECB kernel and
+     * whitened again. With a partial last block, the last full block and the
+     * partial one are handled by ciphertext stealing (IEEE 1619 5.3.2 / 5.4.2).
+     */
+    private void cryptSector(boolean encrypt, long sector, byte[] in, int inOff, int len,
+                             byte[] out, int outOff, byte[] tw) {
+        if (len < AES_Constants.BLOCK_SIZE) {
+            throw new IllegalArgumentException("An XTS sector must be at least " + AES_Constants.BLOCK_SIZE + " bytes.");
+        }
+        final int bs = AES_Constants.BLOCK_SIZE;
+        int m = len / bs;
+        int r = len % bs;
+        int full = r == 0 ? m : m - 1;
+
+        // T_0 = E_K2(sector number, little-endian), T_j+1 = T_j * alpha
+        Arrays.fill(tw, 0, bs, (byte) 0);
+        for (int i = 0; i < 8; i++) {
+            tw[i] = (byte) (sector >>> (8 * i));
+        }
+        tweakKey.encryptBlock(tw, 0, tw, 0);
+        long lo = loadLE(tw, 0), hi = loadLE(tw, 8);
+        int tweaks = r == 0 ? m : m + 1;
+        for (int j = 1; j < tweaks; j++) {
+            long carry = hi >> 63; // all ones when the top bit is set
+            hi = (hi << 1) | (lo >>> 63);
+            lo = (lo << 1) ^ (carry & 0x87);
+            storeLE(lo, tw, j * bs);
+            storeLE(hi, tw, j * bs + 8);
+        }
+
+        int fullBytes = full * bs;
+        xor(in, inOff, tw, 0, out, outOff, fullBytes);
+        if (encrypt) {
+            dataKey.encryptBlocks(out, outOff, full, out, outOff);
+        } else {
+            dataKey.decryptBlocks(out, outOff, full, out, outOff);
+        }
+        xor(out, outOff, tw, 0, out, outOff, fullBytes);
+        if (r == 0) {
+            return;
+        }
+
+        // ciphertext stealing over block m-1 (at p) and the r-byte tail (at p + 16)
+        int p = fullBytes;
+        byte[] a = new byte[bs];
+        byte[] b = new byte[bs];
+        System.arraycopy(in, inOff + p + bs, b, 0, r); // read the tail before anything is written
+        int tFirst = encrypt ? (m - 1) * bs : m * bs;  // tweak for the first of the two steps
+        int tSecond = encrypt ? m * bs : (m - 1) * bs;
+
+        xor(in, inOff + p, tw, tFirst, a, 0, bs);
+        if (encrypt) {
+            dataKey.encryptBlock(a, 0, a, 0);
+        } else {
+            dataKey.decryptBlock(a, 0, a, 0);
+        }
+        xor(a, 0, tw, tFirst, a, 0, bs);
+
+        // the tail takes the first r bytes; the stolen bytes complete the other block
+        System.arraycopy(a, r, b, r, bs - r);
+        System.arraycopy(a, 0, out, outOff + p + bs, r);
+
+        xor(b, 0, tw, tSecond, b, 0, bs);
+        if (encrypt) {
+            dataKey.encryptBlock(b, 0, b, 0);
+        } else {
+            dataKey.decryptBlock(b, 0, b, 0);
+        }
+        xor(b, 0, tw, tSecond, out, outOff + p, bs);
+    }
+
+    private static void xor(byte[] x, int xOff, byte[] y, int yOff, byte[] out, int outOff, int len) {
+        for (int i = 0; i < len; i++) {
+            out[outOff + i] = (byte) (x[xOff + i] ^ y[yOff + i]);
+        }
+    }
+
+    private static long loadLE(byte[] b, int off) {
+        return (Integer.reverseBytes(AES_Utils.loadWord(b, off)) & 0xFFFFFFFFL)
+                | ((long) Integer.reverseBytes(AES_Utils.loadWord(b, off + 4)) << 32);
+    }
+
+    private static void storeLE(long v, byte[] b, int off) {
+        AES_Utils.storeWord(Integer.reverseBytes((int) v), b, off);
+        AES_Utils.storeWord(Integer.reverseBytes((int) (v >>> 32)), b, off + 4);
+    }
+}
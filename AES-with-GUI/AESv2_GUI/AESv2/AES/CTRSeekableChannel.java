@@ -0,0 +1,211 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * CTRSeekableChannel.java
+ * Read-only SeekableByteChannel over an AES-128-CTR encrypted file that
+ * decrypts lazily, only the bytes that are actually read.
+ *
+ * The plaintext byte at position p is ciphertext byte p XOR keystream byte
+ * p, and keystream block p / 16 is E_K(IV + p / 16). So position(p) costs
+ * nothing: the next read computes that counter directly with
+ * AES_CTR.crypt(offset, ...) and never touches earlier data.
+ *
+ * Small reads go through a read-ahead cache of decrypted bytes, filled from
+ * the block containing the read position. The read-ahead starts at
+ * MIN_READ_AHEAD, so a random small read decrypts little more than it
+ * returns, and doubles up to CACHE_SIZE while the reads stay sequential, so
+ * a scan of small reads costs one file read and one batch of interleaved AES
+ * blocks per window. Reads at least as large as the cache bypass it: the
+ * ciphertext is read straight into the caller's buffer and decrypted there
+ * in place.
+ *
+ * open(path, cipher) reads the AESFileTool format (16-byte IV header, then
+ * the ciphertext); the constructor takes any channel, IV and data offset.
+ */
+public class CTRSeekableChannel implements SeekableByteChannel {
+
+    /** Size of the decrypted read-ahead window; a multiple of the block size. */
+    public static final int CACHE_SIZE = 64 * 1024;
+    /** Read-ahead after a seek; a multiple of the block size. */
+    public static final int MIN_READ_AHEAD = 4 * 1024;
+
+    private final FileChannel channel;
+    private final AES_CTR ctr;
+    private final long dataStart;
+    private final long size;
+
+    private long position;
+    private final byte[] cache = new byte[CACHE_SIZE];
+    private long cacheStart = -1; // plaintext offset of cache[0], -1 when empty
+    private int cacheLen;
+    private int readAhead = MIN_READ_AHEAD;
+    private boolean open = true;
+
+    /** Opens a file written by AESFileTool (IV header followed by the ciphertext). */
+    public static CTRSeekableChannel open(Path path, AESCipher cipher) throws IOException {
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            byte[] iv = new byte[AESFileTool.HEADER_SIZE];
+            ByteBuffer header = ByteBuffer.wrap(iv);
+            while (header.hasRemaining()) {
+                if (ch.read(header, header.position()) < 0) {
+                    throw new IOException("File too short for the " + AESFileTool.HEADER_SIZE + "-byte IV header.");
+                }
+            }
+            return new CTRSeekableChannel(ch, cipher, iv, AESFileTool.HEADER_SIZE);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /*
+     * CTRSeekableChannel:
+     * channel holds the ciphertext from byte dataStart to its end; iv is the
+     * initial counter block. The channel is closed together with this one.
+     */
+    public CTRSeekableChannel(FileChannel channel, AESCipher cipher, byte[] iv, long dataStart) throws IOException {
+        if (dataStart < 0 || dataStart > channel.size()) {
+            throw new IllegalArgumentException("Data offset " + dataStart + " is outside the file.");
+        }
+        this.channel = channel;
+        this.ctr = new AES_CTR(cipher, iv);
+        this.dataStart = dataStart;
+        this.size = channel.size() - dataStart;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        checkOpen();
+        if (position >= size) {
+            return dst.hasRemaining() ? -1 : 0;
+        }
+        int want = (int) Math.min(dst.remaining(), size - position);
+        if (want == 0) {
+            return 0;
+        }
+        if (want >= CACHE_SIZE && !inCache(position)) {
+            return readDirect(dst, want);
+        }
+
+        int done = 0;
+        while (done < want) {
+            if (!inCache(position)) {
+                fill(position, want - done);
+            }
+            int at = (int) (position - cacheStart);
+            int n = Math.min(want - done, cacheLen - at);
+            dst.put(cache, at, n);
+            position += n;
+            done += n;
+        }
+        return done;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        checkOpen();
+        return position;
+    }
+
+    /** Moves to any plaintext offset; positions past the end read as end-of-stream. */
+    @Override
+    public synchronized CTRSeekableChannel position(long newPosition) throws IOException {
+        checkOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position must not be negative.");
+        }
+        position = newPosition;
+        return this;
+    }
+
+    /** Plaintext length (the file length minus the header). */
+    @Override
+    public long size() throws IOException {
+        checkOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long newSize) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    /** Wipes the cached plaintext and closes the underlying channel. */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!open) return;
+        open = false;
+        Arrays.fill(cache, (byte) 0);
+        cacheStart = -1;
+        channel.close();
+    }
+
+    private boolean inCache(long pos) {
+        return cacheStart >= 0 && pos >= cacheStart && pos < cacheStart + cacheLen;
+    }
+
+    /*
+     * fill:
+     * Decrypts a window starting at the block that holds pos, covering at
+     * least 'need' bytes when the cache allows. The read-ahead doubles when
+     * this window directly follows the previous one and resets otherwise.
+     */
+    private void fill(long pos, int need) throws IOException {
+        long start = pos & ~(long) (AES_Constants.BLOCK_SIZE - 1);
+        boolean sequential = cacheStart >= 0 && start == cacheStart + cacheLen;
+        readAhead = sequential ? Math.min(2 * readAhead, CACHE_SIZE) : MIN_READ_AHEAD;
+        long wanted = Math.max(readAhead, pos - start + need);
+        int len = (int) Math.min(Math.min(CACHE_SIZE, wanted), size - start);
+        readFully(ByteBuffer.wrap(cache, 0, len), dataStart + start);
+        ctr.crypt(start, cache, 0, len, cache, 0);
+        cacheStart = start;
+        cacheLen = len;
+    }
+
+    /* readDirect: large read, ciphertext into dst and decrypted in place. */
+    private int readDirect(ByteBuffer dst, int want) throws IOException {
+        ByteBuffer window = dst.duplicate();
+        window.limit(window.position() + want);
+        readFully(window.duplicate(), dataStart + position);
+        ctr.crypt(position, window.duplicate(), window);
+        dst.position(dst.position() + want);
+        position += want;
+        return want;
+    }
+
+    private void readFully(ByteBuffer buf, long filePos) throws IOException {
+        long pos = filePos;
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, pos);
+            if (n < 0) {
+                throw new IOException("Unexpected end of file at offset " + pos + ".");
+            }
+            pos += n;
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
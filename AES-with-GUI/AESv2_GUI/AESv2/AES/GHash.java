@@ -0,0 +1,185 @@
+import java.util.Arrays;
+
+/**
+ * GHash.java
+ * GHASH universal hash of GCM (NIST SP 800-38D 6.4) with Shoup's table method.
+ *
+ * Field elements are two longs (hi = bytes 0..7, lo = bytes 8..15, big-endian);
+ * in GCM bit order the MSB of byte 0 is the x^0 coefficient, so multiplying by
+ * x is a right shift. Per hash key H a table of multiples is precomputed:
+ *   tableBits = 4: 16 multiples of H, two lookups per input byte (256 bytes)
+ *   tableBits = 8: 256 multiples of H, one lookup per input byte (4 KiB)
+ * The bits shifted out at each step are folded back with the small reduction
+ * tables R4/R8 (the constant 0xE1 shifted into place).
+ *
+ * update() buffers partial blocks; pad() zero-fills the current partial
+ * block, as GCM does at the end of the AAD and of the ciphertext.
+ */
+public class GHash {
+
+    private static final long[] R4 = reductionTable(4);
+    private static final long[] R8 = reductionTable(8);
+
+    private final int tableBits;
+    private final long[] mHi;
+    private final long[] mLo;
+
+    private long yHi, yLo;
+    private final byte[] partial = new byte[AES_Constants.BLOCK_SIZE];
+    private int partialLen;
+
+    /** h is the 16-byte hash key E_K(0^128); tableBits is 4 or 8. */
+    public GHash(byte[] h, int tableBits) {
+        if (h == null || h.length != AES_Constants.BLOCK_SIZE) {
+            throw new IllegalArgumentException("GHASH key must be " + AES_Constants.BLOCK_SIZE + " bytes.");
+        }
+        if (tableBits != 4 && tableBits != 8) {
+            throw new IllegalArgumentException("GHASH table size must be 4 or 8 bits.");
+        }
+        this.tableBits = tableBits;
+        int size = 1 << tableBits;
+        mHi = new long[size];
+        mLo = new long[size];
+
+        // M[top bit] = H; each lower power of two is the previous one times x
+        long vh = loadLong(h, 0), vl = loadLong(h, 8);
+        for (int i = size >>> 1; i > 0; i >>>= 1) {
+            mHi[i] = vh;
+            mLo[i] = vl;
+            long carry = -(vl & 1) & 0xE100000000000000L;
+            vl = (vh << 63) | (vl >>> 1);
+            vh = (vh >>> 1) ^ carry;
+        }
+        // every other entry is the XOR of its set bits
+        for (int i = 2; i < size; i <<= 1) {
+            for (int j = 1; j < i; j++) {
+                mHi[i + j] = mHi[i] ^ mHi[j];
+                mLo[i + j] = mLo[i] ^ mLo[j];
+            }
+        }
+    }
+
+    public int tableBits() {
+        return tableBits;
+    }
+
+    /** Absorbs len bytes; a trailing partial block is kept until more data or pad(). */
+    public void update(byte[] in, int off, int len) {
+        if (partialLen > 0) {
+            int n = Math.min(AES_Constants.BLOCK_SIZE - partialLen, len);
+            System.arraycopy(in, off, partial, partialLen, n);
+            partialLen += n;
+            off += n;
+            len -= n;
+            if (partialLen < AES_Constants.BLOCK_SIZE) return;
+            block(partial, 0);
+            partialLen = 0;
+        }
+        while (len >= AES_Constants.BLOCK_SIZE) {
+            block(in, off);
+            off += AES_Constants.BLOCK_SIZE;
+            len -= AES_Constants.BLOCK_SIZE;
+        }
+        if (len > 0) {
+            System.arraycopy(in, off, partial, 0, len);
+            partialLen = len;
+        }
+    }
+
+    /** Zero-pads and absorbs the pending partial block, if any. */
+    public void pad() {
+        if (partialLen > 0) {
+            Arrays.fill(partial, partialLen, AES_Constants.BLOCK_SIZE, (byte) 0);
+            block(partial, 0);
+            partialLen = 0;
+        }
+    }
+
+    /** Absorbs the final length block len(A) || len(C), both in bits. */
+    public void lengths(long aadBytes, long dataBytes) {
+        pad();
+        mul(yHi ^ (aadBytes << 3), yLo ^ (dataBytes << 3));
+    }
+
+    /** Writes the current hash value Y into out[off..off+15]. */
+    public void digest(byte[] out, int off) {
+        storeLong(yHi, out, off);
+        storeLong(yLo, out, off + 8);
+    }
+
+    /** Starts a new hash with the same key. */
+    public void reset() {
+        yHi = 0;
+        yLo = 0;
+        partialLen = 0;
+        Arrays.fill(partial, (byte) 0);
+    }
+
+    private void block(byte[] in, int off) {
+        mul(yHi ^ loadLong(in, off), yLo ^ loadLong(in, off + 8));
+    }
+
+    /* Y = X * H using the per-key table, scanning X from byte 15 down to byte 0. */
+    private void mul(long xh, long xl) {
+        long zh, zl;
+        if (tableBits == 8) {
+            int b = (int) xl & 0xFF;
+            zh = mHi[b];
+            zl = mLo[b];
+            for (int i = 1; i < AES_Constants.BLOCK_SIZE; i++) {
+                b = (int) ((i < 8 ? xl >>> (8 * i) : xh >>> (8 * (i - 8))) & 0xFF);
+                int rem = (int) zl & 0xFF;
+                zl = (zh << 56) | (zl >>> 8);
+                zh = (zh >>> 8) ^ R8[rem];
+                zh ^= mHi[b];
+                zl ^= mLo[b];
+            }
+        } else {
+            zh = 0;
+            zl = 0;
+            for (int i = 0; i < AES_Constants.BLOCK_SIZE; i++) {
+                int b = (int) ((i < 8 ? xl >>> (8 * i) : xh >>> (8 * (i - 8))) & 0xFF);
+                // low nibble first (it sits further from x^0), then high nibble
+                if (i != 0) {
+                    int rem = (int) zl & 0xF;
+                    zl = (zh << 60) | (zl >>> 4);
+                    zh = (zh >>> 4) ^ R4[rem];
+                }
+                zh ^= mHi[b & 0xF];
+                zl ^= mLo[b & 0xF];
+
+                int rem = (int) zl & 0xF;
+                zl = (zh << 60) | (zl >>> 4);
+                zh = (zh >>> 4) ^ R4[rem];
+                zh ^= mHi[b >>> 4];
+                zl ^= mLo[b >>> 4];
+            }
+        }
+        yHi = zh;
+        yLo = zl;
+    }
+
+    /** Reduction terms for 'bits' bits shifted out past x^127, aligned to the top of hi. */
+    private static long[] reductionTable(int bits) {
+        long[] r = new long[1 << bits];
+        for (int v = 0; v < r.length; v++) {
+            long acc = 0;
+            for (int j = 0; j < bits; j++) {
+                if (((v >>> j) & 1) != 0) {
+                    acc ^= 0xE100L >>> (bits - 1 - j);
+                }
+            }
+            r[v] = acc << 48;
+        }
+        return r;
+    }
+
+    static long loadLong(byte[] b, int off) {
+        return ((long) AES_Utils.loadWord(b, off) << 32) | (AES_Utils.loadWord(b, off + 4) & 0xFFFFFFFFL);
+    }
+
+    static void storeLong(long v, byte[] b, int off) {
+        AES_Utils.storeWord((int) (v >>> 32), b, off);
+        AES_Utils.storeWord((int) v, b, off + 4);
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * GaloisField.java
+ * Arithmetic in GF(2^8) with the AES polynomial x^8 + x^4 + x^3 + x + 1,
+ * and the S-Box derived from it.
+ *
+ * Multiplication uses log/antilog tables over the generator 0x03: for
+ * non-zero a and b, a * b = EXP[LOG[a] + LOG[b]]. EXP is stored twice over
+ * (510 entries) so the sum of two logs needs no reduction mod 255. Both
+ * tables are byte[] (768 bytes together).
+ *
+ * The S-Box is the multiplicative inverse followed by the affine map of
+ * FIPS-197 5.1.1, so AES_Constants and AESTables build their tables from
+ * here at class initialization instead of carrying hand-typed literals.
+ */
+public class GaloisField {
+
+    /** The AES reduction polynomial, with the x^8 bit. */
+    public static final int POLY = 0x11B;
+    /** Generator of the multiplicative group used for the log tables. */
+    public static final int GENERATOR = 0x03;
+
+    private static final byte[] EXP = new byte[510];
+    private static final byte[] LOG = new byte[256]; // LOG[0] is unused
+    private static final byte[] SBOX = new byte[256];
+    private static final byte[] INV_SBOX = new byte[256];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = (byte) x;
+            EXP[i + 255] = (byte) x;
+            LOG[x] = (byte) i;
+            x ^= xtime(x); // x * 3 = x * 2 + x
+        }
+        for (int i = 0; i < 256; i++) {
+            int s = sBox(i);
+            SBOX[i] = (byte) s;
+            INV_SBOX[s] = (byte) i;
+        }
+    }
+
+    /** Multiplies two bytes in GF(2^8). */
+    public static int gMul(int a, int b) {
+        a &= 0xFF;
+        b &= 0xFF;
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        return EXP[(LOG[a] & 0xFF) + (LOG[b] & 0xFF)] & 0xFF;
+    }
+
+    /** Multiplicative inverse; 0 maps to 0 as the S-Box definition requires. */
+    public static int inverse(int a) {
+        a &= 0xFF;
+        return a == 0 ? 0 : EXP[255 - (LOG[a] & 0xFF)] & 0xFF;
+    }
+
+    /** Multiplies a byte by 2 (x) with one conditional reduction. */
+    public static int xtime(int b) {
+        b = (b & 0xFF) << 1;
+        return (b & 0x100) != 0 ? b ^ POLY : b;
+    }
+
+    /** SubBytes of one byte: affine transform of the inverse (FIPS-197 5.1.1). */
+    public static int sBox(int x) {
+        int b = inverse(x);
+        int s = b ^ rotl8(b, 1) ^ rotl8(b, 2) ^ rotl8(b, 3) ^ rotl8(b, 4) ^ 0x63;
+        return s & 0xFF;
+    }
+
+    /** A copy of the 256-entry S-Box (built once, at class initialization). */
+    public static byte[] sBoxTable() {
+        return SBOX.clone();
+    }
+
+    /** A copy of the Inverse S-Box, the inverse permutation of the S-Box. */
+    public static byte[] invSBoxTable() {
+        return INV_SBOX.clone();
+    }
+
+    /** Widens a byte table to int[] (0..255), for code that indexes int tables. */
+    public static int[] toInts(byte[] table) {
+        int[] out = new int[table.length];
+        for (int i = 0; i < table.length; i++) {
+            out[i] = table[i] & 0xFF;
+        }
+        return out;
+    }
+
+    private static int rotl8(int b, int n) {
+        return ((b << n) | (b >>> (8 - n))) & 0xFF;
+    }
+}
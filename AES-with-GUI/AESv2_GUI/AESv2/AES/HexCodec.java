@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * HexCodec.java
+ * Table-driven hexadecimal encoding and decoding.
+ *
+ * Encoding looks up both digits of a byte in one 512-entry char table;
+ * decoding maps each ASCII character to its nibble value (or -1) through a
+ * 128-entry table, so there is no String.format, substring or parseInt per
+ * byte. The array methods write into caller-provided buffers; the stream
+ * methods convert payloads of any size with fixed CHUNK-sized buffers.
+ * Output is lowercase; input may use either case.
+ */
+public final class HexCodec {
+
+    static final int CHUNK = 8192;
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+    private static final char[] PAIRS = new char[512];     // byte b -> PAIRS[2b], PAIRS[2b+1]
+    private static final byte[] NIBBLE = new byte[128];    // ASCII char -> value, -1 if not hex
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            PAIRS[2 * b] = DIGITS[b >>> 4];
+            PAIRS[2 * b + 1] = DIGITS[b & 0xF];
+        }
+        Arrays.fill(NIBBLE, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            NIBBLE[DIGITS[i]] = (byte) i;
+            NIBBLE[Character.toUpperCase(DIGITS[i])] = (byte) i;
+        }
+    }
+
+    private HexCodec() {
+    }
+
+    /** Writes 2 * len hex digits for src[off..off+len) into dst[dstOff..]. */
+    public static void encode(byte[] src, int off, int len, char[] dst, int dstOff) {
+        for (int i = 0; i < len; i++) {
+            int p = (src[off + i] & 0xFF) << 1;
+            dst[dstOff++] = PAIRS[p];
+            dst[dstOff++] = PAIRS[p + 1];
+        }
+    }
+
+    public static String encode(byte[] src) {
+        char[] out = new char[src.length * 2];
+        encode(src, 0, src.length, out, 0);
+        return new String(out);
+    }
+
+    /*
+     * decode:
+     * Decodes the 'chars' hex digits at src[off..] (an even number) into
+     * dst[dstOff..]; returns the number of bytes written (chars / 2).
+     * Throws IllegalArgumentException on an odd count or a non-hex character.
+     */
+    public static int decode(CharSequence src, int off, int chars, byte[] dst, int dstOff) {
+        if ((chars & 1) != 0) {
+            throw new IllegalArgumentException("Hex input must have an even number of digits.");
+        }
+        for (int i = 0; i < chars; i += 2) {
+            dst[dstOff + (i >>> 1)] = (byte) ((nibble(src.charAt(off + i)) << 4) | nibble(src.charAt(off + i + 1)));
+        }
+        return chars >>> 1;
+    }
+
+    /** Same as decode(CharSequence, ...) for a char[] source. */
+    public static int decode(char[] src, int off, int chars, byte[] dst, int dstOff) {
+        if ((chars & 1) != 0) {
+            throw new IllegalArgumentException("Hex input must have an even number of digits.");
+        }
+        for (int i = 0; i < chars; i += 2) {
+            dst[dstOff + (i >>> 1)] = (byte) ((nibble(src[off + i]) << 4) | nibble(src[off + i + 1]));
+        }
+        return chars >>> 1;
+    }
+
+    public static byte[] decode(CharSequence hex) {
+        byte[] out = new byte[hex.length() / 2];
+        decode(hex, 0, hex.length(), out, 0);
+        return out;
+    }
+
+    /** True for a non-empty string of hex digits (either case). */
+    public static boolean isHex(CharSequence s) {
+        if (s == null || s.length() == 0) return false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 128 || NIBBLE[c] < 0) return false;
+        }
+        return true;
+    }
+
+    /** Streams in as hex digits to out; returns the number of bytes encoded. */
+    public static long encode(InputStream in, Writer out) throws IOException {
+        byte[] bytes = new byte[CHUNK];
+        char[] chars = new char[2 * CHUNK];
+        long total = 0;
+        int n;
+        while ((n = in.read(bytes)) > 0) {
+            encode(bytes, 0, n, chars, 0);
+            out.write(chars, 0, 2 * n);
+            total += n;
+        }
+        return total;
+    }
+
+    /*
+     * decode (streaming):
+     * Reads hex digits from in until end of stream and writes the bytes to
+     * out; returns the number of bytes written. Whitespace (line breaks in
+     * wrapped hex dumps) is skipped; any other non-hex character is an error.
+     */
+    public static long decode(Reader in, OutputStream out) throws IOException {
+        char[] chars = new char[2 * CHUNK];
+        byte[] bytes = new byte[CHUNK];
+        long total = 0;
+        int pending = 0; // digits kept in chars[0..pending) between reads (0 or 1)
+        int n;
+        while ((n = in.read(chars, pending, chars.length - pending)) > 0) {
+            int len = pending;
+            for (int i = pending; i < pending + n; i++) {
+                if (!Character.isWhitespace(chars[i])) {
+                    chars[len++] = chars[i];
+                }
+            }
+            int even = len & ~1;
+            int written = decode(chars, 0, even, bytes, 0);
+            out.write(bytes, 0, written);
+            total += written;
+            pending = len - even;
+            if (pending == 1) {
+                chars[0] = chars[even];
+            }
+        }
+        if (pending != 0) {
+            throw new IllegalArgumentException("Hex input must have an even number of digits.");
+        }
+        return total;
+    }
+
+    private static int nibble(char c) {
+        int v = c < 128 ? NIBBLE[c] : -1;
+        if (v < 0) {
+            throw new IllegalArgumentException("Not a hex digit: '" + c + "'");
+        }
+        return v;
+    }
+}
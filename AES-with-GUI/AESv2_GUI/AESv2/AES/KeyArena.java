@@ -0,0 +1,294 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * KeyArena.java
+ * Off-heap store of expanded AES-128 key schedules addressed by int handles.
+ *
+ * All schedules live in one contiguous native MemorySegment, one fixed-size
+ * slot per key: the 44-word encryption schedule, followed (optionally) by
+ * the 44-word Equivalent Inverse Cipher schedule. A handle names the slot
+ * (see below), so a million tenants cost one segment plus two int
+ * arrays on the heap instead of a million int[] objects for the GC to scan.
+ *
+ * Freed slots go on a free list and are reused; remove() and close() wipe
+ * the slot contents with zeros. A handle is the slot index plus a per-slot
+ * generation in the bits above it (31 bits minus those the capacity
+ * needs), so a handle kept after remove() is refused even once the slot
+ * holds another tenant's key, until the generation wraps around.
+ *
+ * Adding and removing keys is synchronized; encryption takes no lock. It
+ * copies the round keys out of the segment and checks the handle again
+ * afterwards, so an operation that races with remove() or close() throws
+ * instead of encrypting under a half-wiped key.
+ *
+ * Like AESSegments this needs JDK 22, or JDK 21 with --enable-preview.
+ */
+public final class KeyArena implements AutoCloseable {
+
+    private static final ValueLayout.OfInt WORD = ValueLayout.JAVA_INT; // native order, aligned
+    private static final int SCHEDULE_BYTES = AES_Constants.TOTAL_WORDS * 4;
+
+    private final Arena arena;
+    private final MemorySegment slots;
+    private final int capacity;
+    private final boolean withDecryption;
+    private final long slotBytes;
+
+    private final int[] freeList; // stack of free slot indices
+    private int freeCount;
+    private final int slotBits;   // low handle bits holding the slot index; the rest is the generation
+    // current[slot]: the slot's live handle, or ~(its last handle) while free;
+    // written under the lock, read without it
+    private final AtomicIntegerArray current;
+    private volatile boolean closed;
+
+    // per-thread copy of one schedule, wiped after every operation
+    private static final ThreadLocal<int[]> SCRATCH = ThreadLocal.withInitial(() -> new int[AES_Constants.TOTAL_WORDS]);
+
+    /** Room for 'capacity' keys with both schedules. */
+    public KeyArena(int capacity) {
+        this(capacity, true);
+    }
+
+    /*
+     * withDecryption = false halves the footprint (176 instead of 352 bytes
+     * per key) for tenants that only use encrypt-direction modes
+     * (CTR, GCM, CMAC); decryptBlock then throws IllegalStateException.
+     */
+    public KeyArena(int capacity, boolean withDecryption) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.capacity = capacity;
+        this.withDecryption = withDecryption;
+        this.slotBytes = withDecryption ? 2L * SCHEDULE_BYTES : SCHEDULE_BYTES;
+        this.arena = Arena.ofShared();
+        this.slots = arena.allocate(slotBytes * capacity, 64);
+        this.freeList = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            freeList[i] = capacity - 1 - i; // hand out low slots first
+        }
+        this.freeCount = capacity;
+        this.slotBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(capacity - 1));
+        this.current = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            current.set(i, ~i); // free, generation 0
+        }
+    }
+
+    /** Expands key into a free slot and returns its handle. */
+    public int add(byte[] key) {
+        int handle = reserve();
+        try {
+            store(handle, key, 0);
+        } catch (RuntimeException e) {
+            release(handle);
+            throw e;
+        }
+        current.set(slotIndex(handle), handle); // publishes the stored schedule
+        return handle;
+    }
+
+    /*
+     * addAll:
+     * Batch version of add for count keys packed back to back in
+     * keys[off..off+16*count). Slots are reserved up front, then the key
+     * expansion runs in AESParallel chunks on the given pool; the handles
+     * become valid once all keys are stored.
+     */
+    public int[] addAll(ForkJoinPool pool, byte[] keys, int off, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must not be negative.");
+        }
+        if (off < 0 || keys.length - off < 16L * count) {
+            throw new IllegalArgumentException("keys holds fewer than " + count + " 16-byte keys.");
+        }
+        int[] handles = new int[count];
+        synchronized (this) {
+            if (count > freeCount) {
+                throw new IllegalStateException("KeyArena full: " + freeCount + " free slots, " + count + " requested.");
+            }
+            for (int i = 0; i < count; i++) {
+                handles[i] = reserve();
+            }
+        }
+        try {
+            AESParallel.forEachChunk(pool, count, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    store(handles[i], keys, off + 16 * i);
+                }
+            });
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                for (int handle : handles) {
+                    release(handle);
+                }
+            }
+            throw e;
+        }
+        for (int handle : handles) {
+            current.set(slotIndex(handle), handle);
+        }
+        return handles;
+    }
+
+    /*
+     * remove:
+     * Invalidates the handle, then wipes the slot and returns it to the free
+     * list. The fence keeps the wipe after the invalidation, so a concurrent
+     * reader that copied wiped words always sees the handle gone.
+     */
+    public synchronized void remove(int handle) {
+        checkLive(handle);
+        current.set(slotIndex(handle), ~handle);
+        VarHandle.fullFence();
+        slot(handle).fill((byte) 0);
+        freeList[freeCount++] = slotIndex(handle);
+    }
+
+    public synchronized int size() {
+        return capacity - freeCount;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /** Encrypts one block with the key of handle. */
+    public void encryptBlock(int handle, byte[] in, int inOff, byte[] out, int outOff) {
+        int[] w = schedule(handle, 0);
+        try {
+            AESFastEngine.encryptBlock(w, in, inOff, out, outOff);
+        } finally {
+            Arrays.fill(w, 0);
+        }
+    }
+
+    /** ECB over nBlocks blocks: the schedule is copied out once and the interleaved kernel runs. */
+    public void encryptBlocks(int handle, byte[] in, int inOff, int nBlocks, byte[] out, int outOff) {
+        int[] w = schedule(handle, 0);
+        try {
+            AESFastEngine.encryptBlocks(w, in, inOff, nBlocks, out, outOff);
+        } finally {
+            Arrays.fill(w, 0);
+        }
+    }
+
+    /** Decrypts one block; needs an arena created with withDecryption. */
+    public void decryptBlock(int handle, byte[] in, int inOff, byte[] out, int outOff) {
+        decryptBlocks(handle, in, inOff, 1, out, outOff);
+    }
+
+    /** ECB decryption of nBlocks blocks; needs an arena created with withDecryption. */
+    public void decryptBlocks(int handle, byte[] in, int inOff, int nBlocks, byte[] out, int outOff) {
+        if (!withDecryption) {
+            throw new IllegalStateException("This KeyArena stores encryption schedules only.");
+        }
+        int[] dk = schedule(handle, SCHEDULE_BYTES);
+        try {
+            AESFastEngine.decryptBlocks(dk, in, inOff, nBlocks, out, outOff);
+        } finally {
+            Arrays.fill(dk, 0);
+        }
+    }
+
+    /** Wipes every slot and releases the native memory; all handles become invalid. */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        VarHandle.fullFence();
+        slots.fill((byte) 0);
+        arena.close();
+    }
+
+    /* reserve: takes a free slot and returns its next handle, not yet valid. */
+    private synchronized int reserve() {
+        if (closed) {
+            throw new IllegalStateException("KeyArena is closed.");
+        }
+        if (freeCount == 0) {
+            throw new IllegalStateException("KeyArena full (" + capacity + " keys).");
+        }
+        int index = freeList[--freeCount];
+        int generation = ((~current.get(index) >>> slotBits) + 1) & ((1 << (31 - slotBits)) - 1);
+        int handle = (generation << slotBits) | index;
+        current.set(index, ~handle); // still free, but the generation is used up
+        return handle;
+    }
+
+    /* release: gives back a reserved slot whose key could not be stored. */
+    private synchronized void release(int handle) {
+        if (!closed) {
+            slot(handle).fill((byte) 0);
+        }
+        freeList[freeCount++] = slotIndex(handle);
+    }
+
+    private void store(int handle, byte[] keys, int off) {
+        byte[] key = new byte[16];
+        System.arraycopy(keys, off, key, 0, 16);
+        int[] w = KeyExpansion.expandKey(key, false);
+        MemorySegment slot = slot(handle);
+        MemorySegment.copy(w, 0, slot, WORD, 0, w.length);
+        if (withDecryption) {
+            int[] dk = KeyExpansion.expandDecryptionKey(w);
+            MemorySegment.copy(dk, 0, slot, WORD, SCHEDULE_BYTES, dk.length);
+            Arrays.fill(dk, 0);
+        }
+        Arrays.fill(w, 0);
+        Arrays.fill(key, (byte) 0);
+    }
+
+    /*
+     * schedule:
+     * Copies a schedule of handle into this thread's scratch array, then
+     * checks the handle again (seqlock style): if remove() or close() ran
+     * meanwhile, the copy may be partly wiped, so it is discarded.
+     */
+    private int[] schedule(int handle, long offset) {
+        checkLive(handle);
+        int[] w = SCRATCH.get();
+        try {
+            MemorySegment.copy(slots, WORD, slotIndex(handle) * slotBytes + offset, w, 0, w.length);
+        } catch (IllegalStateException e) {
+            checkLive(handle); // the arena was closed under us
+            throw e;
+        }
+        VarHandle.acquireFence();
+        if (!isLive(handle)) {
+            Arrays.fill(w, 0);
+            checkLive(handle);
+        }
+        return w;
+    }
+
+    private int slotIndex(int handle) {
+        return handle & ((1 << slotBits) - 1);
+    }
+
+    private MemorySegment slot(int handle) {
+        return slots.asSlice(slotIndex(handle) * slotBytes, slotBytes);
+    }
+
+    private boolean isLive(int handle) {
+        return !closed && handle >= 0 && slotIndex(handle) < capacity && current.get(slotIndex(handle)) == handle;
+    }
+
+    private void checkLive(int handle) {
+        if (closed) {
+            throw new IllegalStateException("KeyArena is closed.");
+        }
+        if (!isLive(handle)) {
+            throw new IllegalArgumentException("Unknown or removed key handle: " + handle);
+        }
+    }
+}
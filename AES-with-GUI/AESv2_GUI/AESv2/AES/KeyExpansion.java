@@ -1,5 +1,3 @@
-import java.util.Arrays;
-
 /**
  * KeyExpansion.java
  * Generates the expanded key schedule (11 round keys) from the 128-bit key,
@@ -8,14 +6,20 @@ import java.util.Arrays;
 public class KeyExpansion {
 
     /** Performs circular left shift of a 32-bit word (RotWord). */
-    private static int rotWord(int word) {
+    private static int rotWord(int word, boolean verbose) {
         int rotated = (word << 8) | ((word >> 24) & 0xFF);
-        System.out.printf("    After RotWord: %08x -> %08x\n", word, rotated);
+        if (verbose) System.out.printf("    After RotWord: %08x -> %08x\n", word, rotated);
         return rotated;
     }
 
     /** Substitutes the bytes of a 32-bit word using the S-Box (SubWord). */
-    private static int subWord(int word) {
+    private static int subWord(int word, boolean verbose) {
+        if (!verbose) {
+            return (AES_Constants.S_BOX[word >>> 24] << 24) |
+                    (AES_Constants.S_BOX[(word >>> 16) & 0xFF] << 16) |
+                    (AES_Constants.S_BOX[(word >>> 8) & 0xFF] << 8) |
+                    AES_Constants.S_BOX[word & 0xFF];
+        }
         byte[] bytes = AES_Utils.wordToBytes(word);
         int substituted = 0;
 
@@ -29,15 +33,45 @@ public class KeyExpansion {
         return substituted;
     }
 
+    /*
+     * expandKey:
+     * Quiet expansion in place: w[0..3] holds the key words on entry and
+     * w[4..43] is filled. For callers that rekey per block (AES_MMO) and
+     * reuse one array instead of allocating a schedule each time.
+     */
+    static void expandKey(int[] w) {
+        for (int i = AES_Constants.KEY_WORDS; i < AES_Constants.TOTAL_WORDS; i++) {
+            int temp = w[i - 1];
+            if (i % AES_Constants.KEY_WORDS == 0) {
+                temp = subWord(rotWord(temp, false), false) ^ (AES_Constants.RCON[i / AES_Constants.KEY_WORDS - 1] << 24);
+            }
+            w[i] = w[i - AES_Constants.KEY_WORDS] ^ temp;
+        }
+    }
+
     /** Generates all 11 Round Keys (44 words total) with step-by-step output. */
     public static int[] expandKey(byte[] key) {
+        return expandKey(key, true);
+    }
+
+    /**
+     * Generates all 11 Round Keys (44 words total).
+     * With verbose = false nothing is printed and no temporaries are allocated,
+     * which is what the fast engines use.
+     */
+    public static int[] expandKey(byte[] key, boolean verbose) {
         int[] w = new int[AES_Constants.TOTAL_WORDS]; //TOTAL_WORDS = 4 * (10 + 1); because 11 round
                                                       //each round need for words 11*4=44 words total
         int i;
 
         // Load the initial key into the first 4 words
         for (i = 0; i < AES_Constants.KEY_WORDS; i++) { // KEY_WORDS = 4
-            w[i] = AES_Utils.bytesToWord(Arrays.copyOfRange(key, i * 4, (i + 1) * 4));//genete intial key
+            w[i] = AES_Utils.loadWord(key, i * 4);//genete intial key
+        }
+
+        if (!verbose) {
+            expandKey(w);
+            return w;
         }
 
         System.out.println("--- Key Generation ---");
@@ -60,10 +94,10 @@ public class KeyExpansion {
 
             if (i % AES_Constants.KEY_WORDS == 0) {
                 // Step 1: RotWord
-                temp = rotWord(temp);
+                temp = rotWord(temp, true);
 
                 // Step 2: SubWord
-                temp = subWord(temp);
+                temp = subWord(temp, true);
 
                 // Step 3: XOR with Rcon
                 int rconWord = AES_Constants.RCON[i / AES_Constants.KEY_WORDS - 1] << 24;
@@ -96,4 +130,26 @@ public class KeyExpansion {
 
         return w;
     }
+
+    /**
+     * Derives the decryption schedule for the Equivalent Inverse Cipher (FIPS-197 5.3.5).
+     * Round keys are taken in reverse order and InvMixColumns is applied to the
+     * nine middle round keys, so AESFastEngine.decryptBlock can use the same
+     * round structure (and cost) as encryption.
+     */
+    public static int[] expandDecryptionKey(int[] w) {
+        int[] dk = new int[AES_Constants.TOTAL_WORDS];
+        for (int round = 0; round <= AES_Constants.ROUNDS; round++) {
+            int src = (AES_Constants.ROUNDS - round) * AES_Constants.KEY_WORDS;
+            int dst = round * AES_Constants.KEY_WORDS;
+            for (int c = 0; c < AES_Constants.KEY_WORDS; c++) {
+                int word = w[src + c];
+                if (round != 0 && round != AES_Constants.ROUNDS) {
+                    word = AESTables.invMixColumn(word);
+                }
+                dk[dst + c] = word;
+            }
+        }
+        return dk;
+    }
 }
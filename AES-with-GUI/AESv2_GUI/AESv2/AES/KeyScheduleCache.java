@@ -0,0 +1,127 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * KeyScheduleCache.java
+ * Bounded, thread-safe LRU cache of expanded AES-128 key schedules keyed by raw key bytes.
+ *
+ * Each entry is an AESCipher, which holds both the encryption and the
+ * decryption schedule. The cache's ciphers never leave it: get() returns a
+ * copy of the schedules (two array copies, no key expansion) that belongs
+ * to the caller, who may destroy() it when done. Eviction and clear() can
+ * therefore zeroize the expanded schedules and the stored key bytes right
+ * away without breaking a caller, or a mode built on its copy (AES_CMAC,
+ * AES_FF1, ...).
+ */
+public class KeyScheduleCache {
+
+    /** Shared cache used by AES_128 and AES_GUI for the fast engine. */
+    public static final KeyScheduleCache SHARED = new KeyScheduleCache(64);
+
+    private final int capacity;
+    private final LinkedHashMap<KeyBytes, AESCipher> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public KeyScheduleCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be at least 1.");
+        }
+        this.capacity = capacity;
+        // access-order map: iteration starts at the least recently used entry
+        this.entries = new LinkedHashMap<>(capacity * 4 / 3 + 1, 0.75f, true);
+    }
+
+    /*
+     * get:
+     * Returns a cipher context for a 16-byte key, owned by the caller,
+     * expanding the key on a miss. Expansion happens under the lock; it is a
+     * few hundred table lookups, cheaper than letting two threads race to
+     * expand the same key.
+     */
+    public synchronized AESCipher get(byte[] key) {
+        if (key == null || key.length != AES_Constants.BLOCK_SIZE) {
+            throw new IllegalArgumentException("Key must be " + AES_Constants.BLOCK_SIZE + " bytes (128 bits).");
+        }
+        KeyBytes lookup = new KeyBytes(key);
+        AESCipher cipher = entries.get(lookup);
+        if (cipher != null) {
+            hits++;
+            return cipher.copy();
+        }
+
+        cipher = new AESCipher(key);
+        misses++;
+        entries.put(new KeyBytes(key.clone()), cipher);
+
+        if (entries.size() > capacity) {
+            Iterator<Map.Entry<KeyBytes, AESCipher>> eldest = entries.entrySet().iterator();
+            Map.Entry<KeyBytes, AESCipher> e = eldest.next();
+            eldest.remove();
+            evict(e);
+        }
+        return cipher.copy();
+    }
+
+    /** Drops every entry and zeroizes the stored schedules and key bytes. */
+    public synchronized void clear() {
+        for (Map.Entry<KeyBytes, AESCipher> e : entries.entrySet()) {
+            evict(e);
+        }
+        entries.clear();
+    }
+
+    /* evict: the cache's cipher is private to it, so it can be destroyed here. */
+    private void evict(Map.Entry<KeyBytes, AESCipher> e) {
+        e.getValue().destroy();
+        Arrays.fill(e.getKey().bytes, (byte) 0);
+        evictions++;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "KeyScheduleCache[size=" + entries.size() + "/" + capacity +
+                ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+
+    /** Raw key bytes with value equality, used as the map key. */
+    private static final class KeyBytes {
+        private final byte[] bytes;
+        private final int hash;
+
+        KeyBytes(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof KeyBytes && Arrays.equals(bytes, ((KeyBytes) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
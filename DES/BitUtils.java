@@ -37,26 +37,22 @@ public class BitUtils {
         return new String(bytes);
     }
 
-    public static String bitsToHex(boolean[] bits) {
-        StringBuilder hex = new StringBuilder();
-        // Pad with leading zeros if necessary to make it a multiple of 4
-        int length = bits.length;
-        int pad = 4 - (length % 4);
-        if (pad != 4 && pad != 0) {
-            length += pad;
-        }
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
 
-        for (int i = 0; i < length; i += 4) {
+    public static String bitsToHex(boolean[] bits) {
+        // One digit per 4 bits; a short last group is padded with zero bits on the right
+        char[] hex = new char[(bits.length + 3) / 4];
+        for (int d = 0; d < hex.length; d++) {
             int val = 0;
             for (int j = 0; j < 4; j++) {
-                int bitIndex = i + j;
+                int bitIndex = d * 4 + j;
                 if (bitIndex < bits.length && bits[bitIndex]) {
                     val |= (1 << (3 - j));
                 }
             }
-            hex.append(Integer.toHexString(val));
+            hex[d] = HEX_DIGITS[val];
         }
-        return hex.toString().toUpperCase();
+        return new String(hex);
     }
 
 
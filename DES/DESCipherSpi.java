@@ -0,0 +1,277 @@
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.InvalidParameterSpecException;
+import java.util.Arrays;
+
+/**
+ * DESCipherSpi.java
+ *
+ * javax.crypto service provider for DES on top of DESFastEngine, so that
+ * Cipher.getInstance("DES/CBC/PKCS5Padding", provider) runs this project's
+ * DES. Modes: ECB, CBC. Paddings: NoPadding, PKCS5Padding.
+ * The AES project's AESProvider registers this class when it is on the
+ * classpath. DES is kept for comparison and legacy data only.
+ */
+public class DESCipherSpi extends CipherSpi {
+
+    private static final int BS = DESFastEngine.BLOCK_SIZE;
+
+    private boolean cbc;
+    private boolean padding;
+
+    private boolean encrypt;
+    private long[] subkeys;
+    private byte[] iv;
+    private final byte[] chain = new byte[BS];
+    private final byte[] buffer = new byte[BS];
+    private final byte[] saved = new byte[BS]; // CBC decryption: ciphertext block that becomes the chaining value
+    private int bufLen;
+
+    @Override
+    protected void engineSetMode(String mode) throws NoSuchAlgorithmException {
+        if (mode.equalsIgnoreCase("ECB")) {
+            cbc = false;
+        } else if (mode.equalsIgnoreCase("CBC")) {
+            cbc = true;
+        } else {
+            throw new NoSuchAlgorithmException("Unsupported DES mode: " + mode);
+        }
+    }
+
+    @Override
+    protected void engineSetPadding(String pad) throws NoSuchPaddingException {
+        if (pad.equalsIgnoreCase("NoPadding")) {
+            padding = false;
+        } else if (pad.equalsIgnoreCase("PKCS5Padding")) {
+            padding = true;
+        } else {
+            throw new NoSuchPaddingException("Unsupported DES padding: " + pad);
+        }
+    }
+
+    @Override
+    protected int engineGetBlockSize() {
+        return BS;
+    }
+
+    @Override
+    protected int engineGetOutputSize(int inputLen) {
+        int total = bufLen + inputLen;
+        return encrypt && padding ? (total / BS + 1) * BS : total;
+    }
+
+    @Override
+    protected byte[] engineGetIV() {
+        return iv == null ? null : iv.clone();
+    }
+
+    @Override
+    protected AlgorithmParameters engineGetParameters() {
+        if (iv == null) return null;
+        try {
+            AlgorithmParameters params = AlgorithmParameters.getInstance("DES");
+            params.init(new IvParameterSpec(iv));
+            return params;
+        } catch (NoSuchAlgorithmException | InvalidParameterSpecException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, SecureRandom random) throws InvalidKeyException {
+        try {
+            engineInit(opmode, key, (AlgorithmParameterSpec) null, random);
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new InvalidKeyException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, AlgorithmParameters params, SecureRandom random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        AlgorithmParameterSpec spec = null;
+        if (params != null) {
+            try {
+                spec = params.getParameterSpec(IvParameterSpec.class);
+            } catch (InvalidParameterSpecException e) {
+                throw new InvalidAlgorithmParameterException(e);
+            }
+        }
+        engineInit(opmode, key, spec, random);
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, AlgorithmParameterSpec params, SecureRandom random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (opmode != Cipher.ENCRYPT_MODE && opmode != Cipher.DECRYPT_MODE) {
+            throw new InvalidAlgorithmParameterException("Only ENCRYPT_MODE and DECRYPT_MODE are supported.");
+        }
+        byte[] raw = key.getEncoded();
+        if (raw == null || raw.length != BS) {
+            throw new InvalidKeyException("DES key must be 8 bytes.");
+        }
+        encrypt = opmode == Cipher.ENCRYPT_MODE;
+        subkeys = DESFastEngine.expandKey(raw);
+        Arrays.fill(raw, (byte) 0);
+
+        iv = null;
+        if (cbc) {
+            if (params instanceof IvParameterSpec) {
+                iv = ((IvParameterSpec) params).getIV();
+                if (iv.length != BS) {
+                    throw new InvalidAlgorithmParameterException("DES IV must be 8 bytes.");
+                }
+            } else if (params != null) {
+                throw new InvalidAlgorithmParameterException("CBC needs an IvParameterSpec.");
+            } else if (encrypt) {
+                iv = new byte[BS];
+                (random != null ? random : new SecureRandom()).nextBytes(iv);
+            } else {
+                throw new InvalidAlgorithmParameterException("CBC decryption needs an IV.");
+            }
+        } else if (params != null) {
+            throw new InvalidAlgorithmParameterException("ECB takes no parameters.");
+        }
+        reset();
+    }
+
+    @Override
+    protected byte[] engineUpdate(byte[] input, int inputOffset, int inputLen) {
+        byte[] out = new byte[engineGetOutputSize(inputLen)];
+        int n = update(input, inputOffset, inputLen, out, 0);
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    @Override
+    protected int engineUpdate(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset)
+            throws ShortBufferException {
+        checkOutput(inputLen, output, outputOffset);
+        return update(input, inputOffset, inputLen, output, outputOffset);
+    }
+
+    @Override
+    protected byte[] engineDoFinal(byte[] input, int inputOffset, int inputLen)
+            throws IllegalBlockSizeException, BadPaddingException {
+        byte[] out = new byte[engineGetOutputSize(inputLen)];
+        int n = doFinal(input, inputOffset, inputLen, out, 0);
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    @Override
+    protected int engineDoFinal(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset)
+            throws ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+        checkOutput(inputLen, output, outputOffset);
+        return doFinal(input, inputOffset, inputLen, output, outputOffset);
+    }
+
+    private void checkOutput(int inputLen, byte[] output, int outputOffset) throws ShortBufferException {
+        if (output.length - outputOffset < engineGetOutputSize(inputLen)) {
+            throw new ShortBufferException("Need " + engineGetOutputSize(inputLen) + " bytes of output space.");
+        }
+    }
+
+    /*
+     * update:
+     * Same buffering rule as AESStreamCipher: padded decryption keeps the
+     * last full block for doFinal. Like there, any in-place offsets are
+     * allowed.
+     */
+    private int update(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        if (subkeys == null) {
+            throw new IllegalStateException("Cipher not initialized.");
+        }
+        if (in == out && outOff + bufLen > inOff && outOff < inOff + len) {
+            // output byte i is written before input byte i + bufLen - (outOff - inOff) is read
+            in = Arrays.copyOfRange(in, inOff, inOff + len);
+            inOff = 0;
+        }
+        boolean holdBack = padding && !encrypt;
+        int written = 0;
+        while (len > 0) {
+            int n = Math.min(BS - bufLen, len);
+            System.arraycopy(in, inOff, buffer, bufLen, n);
+            bufLen += n;
+            inOff += n;
+            len -= n;
+            if (bufLen == BS && !(holdBack && len == 0)) {
+                processBlock(buffer, out, outOff + written);
+                written += BS;
+                bufLen = 0;
+            }
+        }
+        return written;
+    }
+
+    private int doFinal(byte[] in, int inOff, int len, byte[] out, int outOff)
+            throws IllegalBlockSizeException, BadPaddingException {
+        try {
+            int written = update(in, inOff, len, out, outOff);
+            if (encrypt && padding) {
+                Arrays.fill(buffer, bufLen, BS, (byte) (BS - bufLen));
+                processBlock(buffer, out, outOff + written);
+                return written + BS;
+            }
+            if (!padding) {
+                if (bufLen != 0) {
+                    throw new IllegalBlockSizeException("Input length is not a multiple of 8 bytes.");
+                }
+                return written;
+            }
+            if (bufLen != BS) {
+                throw new IllegalBlockSizeException("Padded ciphertext must be a non-empty multiple of 8 bytes.");
+            }
+            byte[] last = new byte[BS];
+            processBlock(buffer, last, 0);
+            int pad = last[BS - 1] & 0xFF;
+            int bad = (pad == 0 || pad > BS) ? 1 : 0;
+            for (int i = 0; i < BS; i++) {
+                bad |= (i >= BS - pad ? 1 : 0) & ((last[i] & 0xFF) != pad ? 1 : 0);
+            }
+            if (bad != 0) {
+                throw new BadPaddingException("Invalid PKCS#5 padding.");
+            }
+            System.arraycopy(last, 0, out, outOff + written, BS - pad);
+            return written + BS - pad;
+        } finally {
+            reset();
+        }
+    }
+
+    private void processBlock(byte[] block, byte[] out, int outOff) {
+        if (!cbc) {
+            DESFastEngine.cryptBlock(subkeys, encrypt, block, 0, out, outOff);
+        } else if (encrypt) {
+            for (int i = 0; i < BS; i++) {
+                chain[i] ^= block[i];
+            }
+            DESFastEngine.cryptBlock(subkeys, true, chain, 0, chain, 0);
+            System.arraycopy(chain, 0, out, outOff, BS);
+        } else {
+            System.arraycopy(block, 0, saved, 0, BS);
+            DESFastEngine.cryptBlock(subkeys, false, block, 0, out, outOff);
+            for (int i = 0; i < BS; i++) {
+                out[outOff + i] ^= chain[i];
+            }
+            System.arraycopy(saved, 0, chain, 0, BS);
+        }
+    }
+
+    private void reset() {
+        bufLen = 0;
+        if (iv != null) {
+            System.arraycopy(iv, 0, chain, 0, BS);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * DESFastEngine.java
+ *
+ * Quiet DES block engine for bulk use (the JCA provider, benchmarks).
+ * Blocks and keys are held in a long (bit 1 of the standard tables is the
+ * MSB) instead of boolean[], nothing is printed, and the S-Boxes are fused
+ * with the P-Box permutation into eight 64-entry tables built once from
+ * DESConstants. DES.java with DESTransformations stays the step-by-step
+ * version that prints every intermediate value.
+ */
+public class DESFastEngine {
+
+    public static final int BLOCK_SIZE = 8;
+
+    // SP[i][six bits] = P(S_i(six bits) placed in its nibble)
+    private static final int[][] SP = new int[8][64];
+
+    static {
+        for (int i = 0; i < 8; i++) {
+            for (int six = 0; six < 64; six++) {
+                int row = ((six >>> 4) & 2) | (six & 1);
+                int col = (six >>> 1) & 0xF;
+                long nibble = (long) DESConstants.S_BOXES[i][row][col] << (28 - 4 * i);
+                SP[i][six] = (int) permute(nibble, 32, DESConstants.P_BOX);
+            }
+        }
+    }
+
+    /** Expands an 8-byte key into the 16 48-bit round keys K1..K16 (parity bits are ignored). */
+    public static long[] expandKey(byte[] key) {
+        if (key == null || key.length != BLOCK_SIZE) {
+            throw new IllegalArgumentException("DES key must be exactly 8 bytes (64 bits).");
+        }
+        long cd = permute(load(key, 0), 64, DESConstants.PC1);
+        int c = (int) (cd >>> 28) & 0xFFFFFFF;
+        int d = (int) cd & 0xFFFFFFF;
+        long[] subkeys = new long[16];
+        for (int i = 0; i < 16; i++) {
+            int shifts = DESConstants.SHIFT_SCHEDULE[i];
+            c = ((c << shifts) | (c >>> (28 - shifts))) & 0xFFFFFFF;
+            d = ((d << shifts) | (d >>> (28 - shifts))) & 0xFFFFFFF;
+            subkeys[i] = permute(((long) c << 28) | d, 56, DESConstants.PC2);
+        }
+        return subkeys;
+    }
+
+    /** Encrypts (or decrypts) the 8 bytes at in[inOff] into out[outOff]; in-place is allowed. */
+    public static void cryptBlock(long[] subkeys, boolean encrypt, byte[] in, int inOff, byte[] out, int outOff) {
+        long ip = permute(load(in, inOff), 64, DESConstants.IP);
+        int l = (int) (ip >>> 32);
+        int r = (int) ip;
+        for (int round = 0; round < 16; round++) {
+            long k = subkeys[encrypt ? round : 15 - round];
+            int t = r;
+            r = l ^ feistel(r, k);
+            l = t;
+        }
+        // R16 || L16, then IP^-1
+        long preOutput = ((long) r << 32) | (l & 0xFFFFFFFFL);
+        store(permute(preOutput, 64, DESConstants.IP_INVERSE), out, outOff);
+    }
+
+    private static int feistel(int r, long k) {
+        long x = permute(r & 0xFFFFFFFFL, 32, DESConstants.E_TABLE) ^ k;
+        int f = 0;
+        for (int i = 0; i < 8; i++) {
+            f ^= SP[i][(int) (x >>> (42 - 6 * i)) & 0x3F];
+        }
+        return f;
+    }
+
+    /** Applies a 1-based DES permutation table to the low inBits bits of in. */
+    private static long permute(long in, int inBits, int[] table) {
+        long out = 0;
+        for (int t : table) {
+            out = (out << 1) | ((in >>> (inBits - t)) & 1);
+        }
+        return out;
+    }
+
+    private static long load(byte[] b, int off) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (b[off + i] & 0xFF);
+        }
+        return v;
+    }
+
+    private static void store(long v, byte[] b, int off) {
+        for (int i = 7; i >= 0; i--) {
+            b[off + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+}